@@ -0,0 +1,19 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import java.io.File;
+
+/**
+ * Shared helpers for the benchmarks.
+ */
+public class Benchmarks {
+    public static void deleteRecursively(File file) {
+        if (file == null) return;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
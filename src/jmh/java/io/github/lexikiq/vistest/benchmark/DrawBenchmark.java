@@ -0,0 +1,98 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import io.github.lexikiq.vistest.FrameSink;
+import io.github.lexikiq.vistest.RawVideoSink;
+import io.github.lexikiq.vistest.VisApplet;
+import org.openjdk.jmh.annotations.*;
+import processing.core.PGraphics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures drawing whole frames into an offscreen renderer, the same way {@link io.github.lexikiq.vistest.FrameExporter}
+ * does. Every invocation draws the next frame of the timeline, wrapping around at the end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawBenchmark {
+    @Param({"1000"})
+    public int runners;
+
+    @Param({"2000"})
+    public int days;
+
+    private File sketchFolder;
+    private VisApplet sketch;
+    private PGraphics graphics;
+    private FrameSink sink;
+    private int frameCount;
+    private int frame;
+    private int framesWritten;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        sketchFolder = SyntheticTimeline.generateTemp(runners, days, 1);
+        sketch = new VisApplet();
+        sketch.initHeadless(sketchFolder);
+        sketch.waitForAvatars = true;
+        graphics = sketch.g;
+        graphics.beginDraw();
+        sketch.setup();
+        graphics.endDraw();
+        frameCount = sketch.getFrameCount();
+        sink = new RawVideoSink(OutputStream.nullOutputStream(), graphics.pixelWidth, graphics.pixelHeight, 2, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        sink.close();
+        Benchmarks.deleteRecursively(sketchFolder);
+    }
+
+    private int nextFrame() {
+        frame = (frame + 1) % frameCount;
+        return frame;
+    }
+
+    /**
+     * Only the bars (names, times, flags, comments) of a frame, which is where most of the drawing happens.
+     */
+    @Benchmark
+    public PGraphics drawBars() {
+        float day = VisApplet.getDayFromFrames(nextFrame());
+        graphics.beginDraw();
+        sketch.background(0);
+        sketch.drawBars(day, sketch.getXScale(day));
+        graphics.endDraw();
+        return graphics;
+    }
+
+    @Benchmark
+    public PGraphics drawFrame() {
+        graphics.beginDraw();
+        sketch.drawFrame(nextFrame());
+        graphics.endDraw();
+        return graphics;
+    }
+
+    /**
+     * A full frame plus reading back its pixels and converting them for a video encoder, i.e. the single-threaded
+     * throughput of an export.
+     */
+    @Benchmark
+    public PGraphics exportFrame() throws IOException {
+        graphics.beginDraw();
+        sketch.drawFrame(nextFrame());
+        graphics.endDraw();
+        graphics.loadPixels();
+        sink.writeFrame(framesWritten++, graphics.pixels, graphics.pixelWidth, graphics.pixelHeight);
+        return graphics;
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import io.github.lexikiq.vistest.VisApplet;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the text formatting done for every bar and tick mark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    private static final int SAMPLES = 1024; // power of two so samples can be picked with a mask
+
+    private final float[] times = new float[SAMPLES];
+    private final int[] days = new int[SAMPLES];
+    private final Date[] dates = new Date[SAMPLES];
+    private int index;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(1);
+        long start = LocalDate.of(2010, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (int i = 0; i < SAMPLES; i++) {
+            // a mix of whole-second and millisecond times, from a few seconds up to several hours
+            float time = random.nextFloat() * (i % 2 == 0 ? 600 : 20000);
+            times[i] = i % 3 == 0 ? Math.round(time*1000)/1000f : (int) time;
+            days[i] = random.nextInt(5000);
+            dates[i] = new Date(start + days[i] * 86400000L);
+        }
+    }
+
+    private int next() {
+        return index = (index + 1) & (SAMPLES-1);
+    }
+
+    /**
+     * The format of the time text on each bar.
+     */
+    @Benchmark
+    public String displayTimeBar() {
+        return VisApplet.displayTime(times[next()], true, true, true);
+    }
+
+    /**
+     * The format of the tick mark labels.
+     */
+    @Benchmark
+    public String displayTimeTick() {
+        return VisApplet.displayTime(times[next()], false, false, true);
+    }
+
+    @Benchmark
+    public String displayDays() {
+        return VisApplet.displayDays(days[next()]);
+    }
+
+    @Benchmark
+    public String dateToString() {
+        return VisApplet.dateToString(dates[next()]);
+    }
+}
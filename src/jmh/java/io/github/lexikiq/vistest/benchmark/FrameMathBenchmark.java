@@ -0,0 +1,80 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import io.github.lexikiq.vistest.SmoothedCurve;
+import io.github.lexikiq.vistest.VisApplet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the math done every frame to pick the axis scale and tick marks, as well as the one-off
+ * {@link VisApplet#initUnits()}. Every invocation moves one frame further into the timeline so the averaging
+ * windows see changing data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameMathBenchmark {
+    @Param({"1000"})
+    public int runners;
+
+    @Param({"4000"})
+    public int days;
+
+    private File sketchFolder;
+    private VisApplet applet;
+    private float[] floatMaxes;
+    private int frameCount;
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        sketchFolder = SyntheticTimeline.generateTemp(runners, days, 1);
+        applet = new VisApplet();
+        applet.dataFolder = new File(sketchFolder, "data");
+        applet.loadData();
+        applet.initUnits();
+        floatMaxes = new float[applet.maxes.length];
+        for (int i = 0; i < floatMaxes.length; i++) {
+            floatMaxes[i] = (float) applet.maxes[i];
+        }
+        frameCount = applet.getFrameCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        Benchmarks.deleteRecursively(sketchFolder);
+    }
+
+    private float nextDay() {
+        frame = (frame + 1) % frameCount;
+        return VisApplet.getDayFromFrames(frame);
+    }
+
+    @Benchmark
+    public float average() {
+        return SmoothedCurve.average(floatMaxes, nextDay(), VisApplet.X_SCALE_SMOOTHING);
+    }
+
+    @Benchmark
+    public float getXScale() {
+        return applet.getXScale(nextDay());
+    }
+
+    @Benchmark
+    public float getUnitChoice() {
+        return applet.getUnitChoice(nextDay());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] initUnits() {
+        applet.initUnits();
+        return applet.unitChoices;
+    }
+}
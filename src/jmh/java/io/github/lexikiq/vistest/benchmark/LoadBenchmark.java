@@ -0,0 +1,81 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import io.github.lexikiq.vistest.RunsCsvReader;
+import io.github.lexikiq.vistest.RunsLogReader;
+import io.github.lexikiq.vistest.RunsLogWriter;
+import io.github.lexikiq.vistest.RunsReader;
+import io.github.lexikiq.vistest.Speedrunner;
+import io.github.lexikiq.vistest.TimelineStore;
+import io.github.lexikiq.vistest.VisApplet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the timeline out of runs.csv or its event log ({@link VisApplet#initUserData(RunsReader)}) for a
+ * range of leaderboard sizes and thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"100", "1000", "5000"})
+    public int runners;
+
+    @Param({"1000", "4000"})
+    public int days;
+
+    @Param({"1", "8"})
+    public int threads;
+
+    @Param({"csv", "log"})
+    public String format;
+
+    private File sketchFolder;
+    private VisApplet applet;
+    private RunsReader reader;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        sketchFolder = SyntheticTimeline.generateTemp(runners, days, 1);
+        applet = new VisApplet();
+        applet.dataFolder = new File(sketchFolder, "data");
+        applet.preprocessThreads = threads;
+        if (format.equals("log")) {
+            RunsLogWriter.convert(new RunsCsvReader(new File(applet.dataFolder, "runs.csv")),
+                    new File(applet.dataFolder, RunsLogReader.FILE_NAME), RunsLogWriter.DEFAULT_SNAPSHOT_DAYS);
+        }
+        applet.loadData();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        // initUserData fills in the runners' run lists, so start every invocation from a freshly loaded state
+        for (Speedrunner sr : applet.runnerArray) {
+            sr.runs.clear();
+            sr.runDisplayValues.clear();
+        }
+        applet.recordHolder = null;
+        Arrays.fill(applet.recordHolderDays, 0);
+        Arrays.fill(applet.maxes, 0);
+        File runsFile = applet.getRunsFile();
+        reader = format.equals("log") ? new RunsLogReader(runsFile) : new RunsCsvReader(runsFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        Benchmarks.deleteRecursively(sketchFolder);
+    }
+
+    @Benchmark
+    public TimelineStore initUserData() {
+        applet.initUserData(reader);
+        return applet.timeline;
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.lexikiq.vistest.benchmark;
+
+import io.github.lexikiq.vistest.VisApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Generates a sketch folder with a made-up leaderboard so benchmarks don't depend on downloaded data.
+ * <p>
+ * The output only depends on the runner count, day count and seed. New runners join over the course of the
+ * timeline and keep improving their times, and a few runs are submitted every day, which roughly matches the
+ * shape of a real category's runs.csv.
+ */
+public class SyntheticTimeline {
+    private static final String[] COUNTRIES = {"us", "ca", "gb", "jp", "de", "au"};
+    private static final String[] PLATFORMS = {"Nintendo 64", "PC", "Wii Virtual Console", "PlayStation 2", null};
+    private static final String[] CATEGORIES = {"Any%", "100%", "16 Star"};
+
+    /**
+     * Writes data/metadata.json, data/runs.csv, flags and the sketch's font and missing flag image.
+     * @param sketchFolder the folder to generate the sketch in
+     * @param assets a folder holding the font and missing_flag.png (usually the repository's data folder)
+     */
+    public static void generate(File sketchFolder, File assets, int runners, int days, long seed) throws IOException {
+        Random random = new Random(seed);
+        File dataFolder = new File(sketchFolder, "data");
+        // the sketch looks for flags in "data\flags", which is a plain file name outside of Windows
+        File flagFolder = new File(dataFolder.getPath() + "\\" + VisApplet.FLAG_FOLDER);
+        flagFolder.mkdirs();
+        dataFolder.mkdirs();
+
+        for (String asset : new String[]{"UbuntuCondensed-Regular-96.vlw", "missing_flag.png"}) {
+            Files.copy(new File(assets, asset).toPath(), new File(dataFolder, asset).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (String country : COUNTRIES) {
+            BufferedImage flag = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+            int rgb = random.nextInt(0xFFFFFF);
+            for (int y = 0; y < 64; y++) {
+                for (int x = 0; x < 64; x++) {
+                    flag.setRGB(x, y, y < 32 ? rgb : ~rgb);
+                }
+            }
+            ImageIO.write(flag, "png", new File(flagFolder, country + ".png"));
+        }
+
+        String[] uuids = new String[runners];
+        JSONObject players = new JSONObject();
+        for (int p = 0; p < runners; p++) {
+            uuids[p] = String.format("x%07d", p);
+            JSONObject player = new JSONObject();
+            player.setString("rel", "user");
+            player.setJSONObject("names", new JSONObject().setString("international", "Runner " + p));
+            if (p % 3 != 0) {
+                JSONObject country = new JSONObject().setString("code", COUNTRIES[random.nextInt(COUNTRIES.length)]);
+                player.setJSONObject("location", new JSONObject().setJSONObject("country", country));
+            }
+            if (p % 2 == 1) {
+                JSONObject color = new JSONObject()
+                        .setString("dark", String.format("#%06x", random.nextInt(0xFFFFFF)))
+                        .setString("light", "#000000");
+                player.setJSONObject("name-style", new JSONObject().setString("style", "solid").setJSONObject("color", color));
+            }
+            players.setJSONArray(uuids[p], new JSONArray().append(player));
+        }
+
+        JSONObject runs = new JSONObject();
+        String[] currentRuns = new String[runners];
+        float[] currentTimes = new float[runners];
+        int runCount = 0;
+        int submissionsPerDay = Math.max(1, runners/200);
+        LocalDate start = LocalDate.of(2010, 1, 1);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(new File(dataFolder, "runs.csv")))) {
+            out.write("date");
+            for (String uuid : uuids) {
+                out.write(',');
+                out.write(uuid);
+            }
+            out.newLine();
+
+            for (int d = 0; d < days; d++) {
+                int joined = Math.max(1, (int) ((long) runners * (d+1) / days));
+                for (int s = 0; s < submissionsPerDay; s++) {
+                    int p = random.nextInt(joined);
+                    float time = 7200 - d*0.5f + random.nextFloat()*2000;
+                    time = runCount % 3 == 0 ? Math.round(time*1000)/1000f : (int) time;
+                    if (currentRuns[p] != null && currentTimes[p] <= time) continue;
+
+                    String runID = String.format("r%07d", runCount++);
+                    JSONObject run = new JSONObject();
+                    run.setFloat("time_t", time);
+                    run.setString("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+                    setNullable(run, "comment", runCount % 4 == 0 ? "synthetic run\nsecond line" : null);
+                    setNullable(run, "region", runCount % 2 == 0 ? "USA / NTSC" : null);
+                    setNullable(run, "platform", PLATFORMS[random.nextInt(PLATFORMS.length)]);
+                    run.setBoolean("emulated", runCount % 5 == 0);
+                    runs.setJSONObject(runID, run);
+                    currentRuns[p] = runID;
+                    currentTimes[p] = time;
+                }
+
+                out.write(start.plusDays(d).toString());
+                for (String runID : currentRuns) {
+                    out.write(',');
+                    if (runID != null) out.write(runID);
+                }
+                out.newLine();
+            }
+        }
+
+        JSONObject metadata = new JSONObject();
+        metadata.setString("game", "Synthetic Game");
+        metadata.setString("category", "Any%");
+        metadata.setBoolean("milli", true);
+        metadata.setBoolean("multi", true);
+        metadata.setBoolean("cover", false);
+        metadata.setJSONArray("pfps", new JSONArray());
+        metadata.setJSONObject("players", players);
+        metadata.setJSONObject("runs", runs);
+        if (!metadata.save(new File(dataFolder, "metadata.json"), "compact")) {
+            throw new IOException("Could not write metadata.json");
+        }
+    }
+
+    private static void setNullable(JSONObject object, String key, String value) {
+        if (value == null) {
+            object.put(key, JSONObject.NULL);
+        } else {
+            object.setString(key, value);
+        }
+    }
+
+    /**
+     * Creates a temporary sketch folder with the given amount of runners and days.
+     */
+    public static File generateTemp(int runners, int days, long seed) throws IOException {
+        File folder = Files.createTempDirectory("timeline-" + runners + "x" + days + "-").toFile();
+        generate(folder, new File(System.getProperty("vistest.assets", "data")), runners, days, seed);
+        return folder;
+    }
+
+    /**
+     * Generates a sketch folder that can be opened or exported like a real one.
+     * @param args the folder, runner count, day count and (optionally) seed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticTimeline <folder> <runners> <days> [seed]");
+            System.exit(1);
+        }
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        generate(new File(args[0]), new File(System.getProperty("vistest.assets", "data")),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+    }
+}
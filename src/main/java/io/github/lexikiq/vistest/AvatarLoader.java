@@ -0,0 +1,150 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PImage;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads profile pictures in the background as runners get close to the top ranks, instead of all of them up front.
+ * <p>
+ * Pictures are decoded on a small pool of daemon threads and scaled down to the size they're drawn at in a bar, so
+ * only a few kilobytes are kept per runner. At most {@code capacity} decoded pictures are kept, dropping the least
+ * recently used ones. All methods are thread-safe, so one loader can be shared between parallel renderers.
+ */
+public class AvatarLoader {
+    /**
+     * Stands in for pictures that failed to load (i.e. missing files), which are drawn like runners without one.
+     */
+    public static final PImage MISSING = new PImage(1, 1);
+
+    private final File[] folders;
+    private final Set<String> pfps;
+    private final int maxDim;
+    private final Map<String, PImage> loaded;
+    private final Map<String, Future<PImage>> pending = new ConcurrentHashMap<String, Future<PImage>>();
+    private final ExecutorService executor;
+
+    /**
+     * @param folders where to look for pictures (named by runner ID), in order
+     * @param pfps the runners that have a picture
+     * @param maxDim the size of the square pictures are scaled to fit in
+     * @param capacity how many decoded pictures to keep
+     */
+    public AvatarLoader(File[] folders, Set<String> pfps, int maxDim, int capacity) {
+        this.folders = folders;
+        this.pfps = pfps;
+        this.maxDim = maxDim;
+        loaded = new LinkedHashMap<String, PImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PImage> eldest) {
+                return size() > capacity;
+            }
+        };
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()/2));
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Avatar loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean hasAvatar(String uuid) {
+        return pfps.contains(uuid);
+    }
+
+    /**
+     * Starts loading a runner's picture if it isn't loaded (or loading) already.
+     */
+    public void request(String uuid) {
+        if (!pfps.contains(uuid)) return;
+        synchronized (loaded) {
+            if (loaded.containsKey(uuid)) return;
+        }
+        pending.computeIfAbsent(uuid, id -> executor.submit(() -> {
+            PImage image = load(id);
+            synchronized (loaded) {
+                loaded.put(id, image);
+            }
+            pending.remove(id);
+            return image;
+        }));
+    }
+
+    /**
+     * @param wait whether to wait for the picture to finish loading
+     * @return the runner's scaled picture, {@link #MISSING} if it couldn't be loaded, or null if it's still loading
+     *         (or the runner doesn't have one)
+     */
+    public PImage get(String uuid, boolean wait) {
+        if (!pfps.contains(uuid)) return null;
+        synchronized (loaded) {
+            PImage image = loaded.get(uuid);
+            if (image != null) return image;
+        }
+        request(uuid);
+        Future<PImage> future = pending.get(uuid);
+        if (future == null) return get(uuid, wait); // finished in the meantime
+        if (!wait && !future.isDone()) return null;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not load the profile picture of " + uuid, e.getCause());
+        }
+    }
+
+    private PImage load(String uuid) {
+        BufferedImage source = null;
+        for (File folder : folders) {
+            File file = new File(folder, uuid + ".png");
+            if (!file.isFile()) continue;
+            try {
+                source = ImageIO.read(file);
+            } catch (IOException ignored) {}
+            break;
+        }
+        if (source == null) return MISSING;
+
+        // scale aspect ratios correctly, the same way bars lay them out
+        int imgW;
+        int imgH;
+        if (source.getHeight() >= source.getWidth()) {
+            imgH = maxDim;
+            imgW = (int) (source.getWidth() * ((float) imgH / source.getHeight()));
+        } else {
+            imgW = maxDim;
+            imgH = (int) (source.getHeight() * ((float) imgW / source.getWidth()));
+        }
+        BufferedImage scaled = new BufferedImage(Math.max(1, imgW), Math.max(1, imgH), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = scaled.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2.drawImage(source, 0, 0, imgW, imgH, null);
+        g2.dispose();
+
+        PImage image = new PImage(scaled.getWidth(), scaled.getHeight(), PImage.ARGB);
+        scaled.getRGB(0, 0, image.width, image.height, image.pixels, 0, image.width);
+        return image;
+    }
+
+    /**
+     * Stops the loading threads. Pictures that are still loading are abandoned.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PShape;
+
+import java.util.Arrays;
+
+/**
+ * Collects the solid rectangles and triangles of a frame into one retained shape, so an OpenGL renderer uploads and
+ * draws them all at once instead of one small draw call each.
+ * <p>
+ * The shape is created once and only its vertices change between frames; vertices that aren't used in a frame are
+ * collapsed onto a point so they don't draw anything. It grows (by re-creating the shape) if a frame needs more room.
+ * Only useful with the OpenGL renderers, which is the only place {@link VisApplet} uses it.
+ */
+public class BarBatch {
+    private final PApplet applet;
+    private PShape shape;
+    private int capacity; // in vertices
+    private int count = 0; // vertices used by the current frame
+    private int lastCount = 0; // vertices used by the previous frame
+    private float[] xs;
+    private float[] ys;
+    private int[] colors;
+
+    public BarBatch(PApplet applet, int capacity) {
+        this.applet = applet;
+        this.capacity = capacity;
+        xs = new float[capacity];
+        ys = new float[capacity];
+        colors = new int[capacity];
+    }
+
+    /**
+     * Starts a new frame.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public void addRect(float x, float y, float w, float h, int color) {
+        addTriangle(x, y, x+w, y, x+w, y+h, color);
+        addTriangle(x, y, x+w, y+h, x, y+h, color);
+    }
+
+    public void addTriangle(float x1, float y1, float x2, float y2, float x3, float y3, int color) {
+        if (count + 3 > capacity) grow();
+        add(x1, y1, color);
+        add(x2, y2, color);
+        add(x3, y3, color);
+    }
+
+    private void add(float x, float y, int color) {
+        xs[count] = x;
+        ys[count] = y;
+        colors[count] = color;
+        count++;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        shape = null; // the vertex buffer is re-created at the new size
+    }
+
+    /**
+     * Draws everything added since {@link #clear()}.
+     */
+    public void draw(PGraphics g) {
+        if (shape == null) {
+            shape = applet.createShape();
+            shape.beginShape(PApplet.TRIANGLES);
+            shape.noStroke();
+            for (int i = 0; i < capacity; i++) shape.vertex(0, 0);
+            shape.endShape();
+            lastCount = capacity;
+        }
+        for (int i = 0; i < count; i++) {
+            shape.setVertex(i, xs[i], ys[i]);
+            shape.setFill(i, colors[i]);
+        }
+        // collapse whatever the last frame used but this one doesn't
+        for (int i = count; i < lastCount; i++) {
+            shape.setVertex(i, 0, 0);
+        }
+        lastCount = count;
+        g.shape(shape);
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.lexikiq.vistest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Pipes raw frames into a local ffmpeg process, which encodes them straight into a video file.
+ */
+public class FfmpegSink extends RawVideoSink {
+    private final Process process;
+
+    private FfmpegSink(Process process, int width, int height, int bufferCount, int firstFrame) {
+        super(new BufferedOutputStream(process.getOutputStream(), 1 << 20), width, height, bufferCount, firstFrame);
+        this.process = process;
+    }
+
+    /**
+     * Starts ffmpeg (which must be on the PATH) encoding an H.264 video.
+     */
+    public static FfmpegSink start(File output, int width, int height, int frameRate, int bufferCount, int firstFrame) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(
+                "ffmpeg", "-y", "-loglevel", "warning",
+                "-f", "rawvideo", "-pix_fmt", "rgb24", "-s", width + "x" + height, "-r", String.valueOf(frameRate), "-i", "-",
+                "-c:v", "libx264", "-preset", "medium", "-crf", "16", "-pix_fmt", "yuv420p",
+                output.getAbsolutePath()
+        );
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return new FfmpegSink(builder.start(), width, height, bufferCount, firstFrame);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) throw new IOException("ffmpeg exited with code " + exitCode);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for ffmpeg to finish", e);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PImage;
+import processing.data.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Every flag (plus the missing flag) packed into a single image, already scaled to the size bars draw them at.
+ * <p>
+ * Flags that look the same once scaled share a cell. The atlas is saved as {@link #IMAGE_FILE} next to an index
+ * ({@link #INDEX_FILE}) mapping country codes to cells, so starting the sketch reads two small files instead of
+ * every flag. Run {@link #main(String[])} to (re)build them from the flags folder. Atlases are never modified after
+ * they're created, so one can be shared between parallel renderers.
+ */
+public class FlagAtlas {
+    public static final String IMAGE_FILE = "flag_atlas.png";
+    public static final String INDEX_FILE = "flag_atlas.json";
+    public static final String MISSING_FLAG_FILE = "missing_flag.png";
+    public static final int GUTTER = 1; // transparent pixels between cells so filtered lookups don't bleed
+
+    private final PImage atlas;
+    private final int size; // width and height of a cell
+    private final int columns;
+    private final Map<String, Integer> cellsByCode;
+    private final int missingCell;
+    private final PImage[] cellImages; // each cell as its own image, for renderers that tint whole images
+
+    private FlagAtlas(PImage atlas, int size, int columns, Map<String, Integer> cellsByCode, int missingCell) {
+        this.atlas = atlas;
+        this.size = size;
+        this.columns = columns;
+        this.cellsByCode = cellsByCode;
+        this.missingCell = missingCell;
+
+        int cells = 0;
+        for (int cell : cellsByCode.values()) cells = Math.max(cells, cell+1);
+        cellImages = new PImage[Math.max(cells, missingCell+1)];
+        for (int cell = 0; cell < cellImages.length; cell++) {
+            PImage image = new PImage(size, size, PImage.ARGB);
+            for (int y = 0; y < size; y++) {
+                System.arraycopy(atlas.pixels, (getCellY(cell)+y)*atlas.width + getCellX(cell), image.pixels, y*size, size);
+            }
+            cellImages[cell] = image;
+        }
+    }
+
+    /**
+     * Scales every flag in {@code flagFolder} (named by country code) and the missing flag to {@code size} pixels
+     * and packs them into an atlas.
+     */
+    public static FlagAtlas build(File flagFolder, File missingFlagFile, int size) throws IOException {
+        // sorted so the same flags always produce the same atlas
+        Map<String, File> files = new TreeMap<String, File>();
+        File[] flagFiles = flagFolder.listFiles();
+        if (flagFiles != null) {
+            for (File file : flagFiles) {
+                String filename = file.getName();
+                if (!file.isFile() || filename.lastIndexOf('.') <= 0) continue;
+                files.put(filename.substring(0, filename.lastIndexOf('.')), file);
+            }
+        }
+
+        List<int[]> cells = new ArrayList<int[]>();
+        Map<Integer, List<Integer>> cellsByHash = new HashMap<Integer, List<Integer>>();
+        Map<String, Integer> cellsByCode = new HashMap<String, Integer>();
+        int missingCell = addCell(cells, cellsByHash, scale(missingFlagFile, size));
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            cellsByCode.put(entry.getKey(), addCell(cells, cellsByHash, scale(entry.getValue(), size)));
+        }
+
+        int columns = (int) Math.ceil(Math.sqrt(cells.size()));
+        int rows = (cells.size() + columns - 1) / columns;
+        int stride = size + GUTTER;
+        PImage atlas = new PImage(columns*stride - GUTTER, rows*stride - GUTTER, PImage.ARGB);
+        for (int cell = 0; cell < cells.size(); cell++) {
+            int x = (cell % columns) * stride;
+            int y = (cell / columns) * stride;
+            for (int row = 0; row < size; row++) {
+                System.arraycopy(cells.get(cell), row*size, atlas.pixels, (y+row)*atlas.width + x, size);
+            }
+        }
+        return new FlagAtlas(atlas, size, columns, cellsByCode, missingCell);
+    }
+
+    /**
+     * @return the cell holding {@code pixels}, which is added if no other cell looks the same
+     */
+    private static int addCell(List<int[]> cells, Map<Integer, List<Integer>> cellsByHash, int[] pixels) {
+        List<Integer> candidates = cellsByHash.computeIfAbsent(Arrays.hashCode(pixels), hash -> new ArrayList<Integer>());
+        for (int cell : candidates) {
+            if (Arrays.equals(cells.get(cell), pixels)) return cell;
+        }
+        cells.add(pixels);
+        candidates.add(cells.size()-1);
+        return cells.size()-1;
+    }
+
+    /**
+     * @return the ARGB pixels of an image scaled to a square of the given size
+     */
+    private static int[] scale(File file, int size) throws IOException {
+        BufferedImage source = ImageIO.read(file);
+        if (source == null) throw new IOException("Could not read " + file);
+        BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = scaled.createGraphics();
+        // the same quality the sketch scales images with
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2.drawImage(source, 0, 0, size, size, null);
+        g2.dispose();
+        return scaled.getRGB(0, 0, size, size, null, 0, size);
+    }
+
+    /**
+     * Reads an atlas written by {@link #save(File, File)}.
+     */
+    public static FlagAtlas load(File imageFile, File indexFile) throws IOException {
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) throw new IOException("Could not read " + imageFile);
+        PImage atlas = new PImage(image.getWidth(), image.getHeight(), PImage.ARGB);
+        image.getRGB(0, 0, atlas.width, atlas.height, atlas.pixels, 0, atlas.width);
+
+        JSONObject index = JSONObject.parse(new String(Files.readAllBytes(indexFile.toPath()), "UTF-8"));
+        JSONObject codes = index.getJSONObject("flags");
+        Map<String, Integer> cellsByCode = new HashMap<String, Integer>();
+        for (Object key : codes.keys()) {
+            cellsByCode.put((String) key, codes.getInt((String) key));
+        }
+        return new FlagAtlas(atlas, index.getInt("size"), index.getInt("columns"), cellsByCode, index.getInt("missing"));
+    }
+
+    public void save(File imageFile, File indexFile) throws IOException {
+        BufferedImage image = new BufferedImage(atlas.width, atlas.height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, atlas.width, atlas.height, atlas.pixels, 0, atlas.width);
+        if (!ImageIO.write(image, "png", imageFile)) throw new IOException("Could not write " + imageFile);
+
+        JSONObject index = new JSONObject();
+        index.setInt("size", size);
+        index.setInt("columns", columns);
+        index.setInt("missing", missingCell);
+        JSONObject codes = new JSONObject();
+        for (Map.Entry<String, Integer> entry : new TreeMap<String, Integer>(cellsByCode).entrySet()) {
+            codes.setInt(entry.getKey(), entry.getValue());
+        }
+        index.setJSONObject("flags", codes);
+        Files.write(indexFile.toPath(), index.toString().getBytes("UTF-8"));
+    }
+
+    /**
+     * @return the image holding every flag
+     */
+    public PImage getAtlas() {
+        return atlas;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param flagCode a country code, or null
+     * @return the cell of the country's flag, or of the missing flag if there isn't one
+     */
+    public int getCell(String flagCode) {
+        if (flagCode == null) return missingCell;
+        Integer cell = cellsByCode.get(flagCode);
+        return cell == null ? missingCell : cell;
+    }
+
+    /**
+     * @return the left edge of a cell in the atlas
+     */
+    public int getCellX(int cell) {
+        return (cell % columns) * (size + GUTTER);
+    }
+
+    /**
+     * @return the top edge of a cell in the atlas
+     */
+    public int getCellY(int cell) {
+        return (cell / columns) * (size + GUTTER);
+    }
+
+    /**
+     * @return a cell on its own, i.e. for tinting just one flag
+     */
+    public PImage getCellImage(int cell) {
+        return cellImages[cell];
+    }
+
+    /**
+     * Builds the flag atlas of a sketch from its flags folder.
+     * <p>
+     * Usage: {@code FlagAtlas [sketch folder] [resolution]}, which default to the working directory and
+     * {@value VisApplet#S_WIDTH}x{@value VisApplet#S_HEIGHT}. Flags are scaled to the size they're drawn at in that
+     * resolution.
+     */
+    public static void main(String[] args) throws IOException {
+        File sketchFolder = new File(args.length > 0 ? args[0] : ".").getAbsoluteFile();
+        File dataFolder = new File(sketchFolder, "data");
+        Layout layout = args.length > 1 ? Layout.parse(args[1], VisApplet.DISPLAY_RANKS)
+                : new Layout(VisApplet.S_WIDTH, VisApplet.S_HEIGHT, VisApplet.DISPLAY_RANKS);
+        long start = System.nanoTime();
+        FlagAtlas atlas = build(VisApplet.getFlagFolder(sketchFolder), new File(dataFolder, MISSING_FLAG_FILE),
+                layout.flagDimensions);
+        atlas.save(new File(dataFolder, IMAGE_FILE), new File(dataFolder, INDEX_FILE));
+        System.out.printf("Packed %d flags into %d cells (%dx%d) in %.1fs%n", atlas.cellsByCode.size(),
+                atlas.cellImages.length, atlas.atlas.width, atlas.atlas.height, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PGraphics;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the timeline offscreen on several threads at once.
+ * <p>
+ * Every frame only depends on its frame number and the data loaded in {@link VisApplet#setup()}, so each thread
+ * gets its own {@link VisApplet#createWorker() worker} (and graphics) and takes the next unrendered frame until
+ * none are left. Finished frames are handed to a {@link FrameSink}.
+ */
+public class FrameExporter {
+    private final VisApplet sketch;
+    private final int threads;
+    private final FrameSink sink;
+    private final AtomicInteger framesDone = new AtomicInteger();
+
+    public FrameExporter(VisApplet sketch, int threads, FrameSink sink) {
+        this.sketch = sketch;
+        this.threads = threads;
+        this.sink = sink;
+    }
+
+    /**
+     * Renders frames {@code startFrame} (inclusive) to {@code endFrame} (exclusive) and closes the sink.
+     */
+    public void export(int startFrame, int endFrame) throws IOException, InterruptedException {
+        AtomicInteger nextFrame = new AtomicInteger(startFrame);
+        int total = endFrame - startFrame;
+        long start = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+        List<VisApplet> renderers = new ArrayList<VisApplet>();
+        for (int t = 0; t < threads; t++) {
+            VisApplet renderer = t == 0 ? sketch : sketch.createWorker();
+            renderers.add(renderer);
+            completion.submit(() -> {
+                PGraphics graphics = renderer.g;
+                int frame;
+                while ((frame = nextFrame.getAndIncrement()) < endFrame) {
+                    graphics.beginDraw();
+                    renderer.drawFrame(frame);
+                    graphics.endDraw();
+                    graphics.loadPixels();
+                    sink.writeFrame(frame, graphics.pixels, graphics.pixelWidth, graphics.pixelHeight);
+
+                    int done = framesDone.incrementAndGet();
+                    if (done % 600 == 0 || done == total) {
+                        float seconds = (System.currentTimeMillis() - start) / 1000f;
+                        System.err.printf("%d/%d frames (%.1f fps)%n", done, total, done / seconds);
+                    }
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+
+        // take the workers as they finish, so the first failure is seen right away instead of after earlier workers
+        Throwable failure = null;
+        try {
+            for (int t = 0; t < threads; t++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } catch (InterruptedException e) {
+            failure = e;
+        }
+        if (failure != null) {
+            // the failed frame will never reach the sink, so the other workers (and the sink) have to stop waiting for it
+            sink.abort(failure);
+            executor.shutdownNow();
+            try {
+                sink.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof InterruptedException) throw (InterruptedException) failure;
+            throw new RuntimeException("Failed to render frame", failure);
+        }
+        sink.close();
+
+        // gather every worker's frame timings into the sketch's profiler
+        if (sketch.profiler != null) {
+            for (int t = 1; t < renderers.size(); t++) {
+                sketch.profiler.addAll(renderers.get(t).profiler);
+            }
+        }
+    }
+
+    /**
+     * Exports the sketch in the working directory (or the first argument) without opening a window.
+     * <p>
+     * Options: {@code --threads=N} (defaults to the number of cores), {@code --start=FRAME}, {@code --end=FRAME}
+     * and one output:
+     * <ul>
+     *     <li>{@code --video=FILE} encodes a video with ffmpeg</li>
+     *     <li>{@code --raw=FILE} writes raw RGB frames to a file, or to stdout if FILE is "-"</li>
+     *     <li>{@code --frames=FOLDER} saves numbered PNGs (the default, in "frames")</li>
+     * </ul>
+     * {@code --size=WIDTHxHEIGHT} renders at another resolution than 1920x1080, i.e. 3840x2160 or a small preview.
+     * {@code --metrics=FILE} also saves how long each frame took to draw, as CSV or (for .json files) JSON.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File sketchFolder = new File(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int startFrame = 0;
+        int endFrame = -1;
+        File framesFolder = new File("frames");
+        File videoFile = null;
+        String rawOutput = null;
+        File metricsFile = null;
+        Layout layout = null;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--start=")) {
+                startFrame = Integer.parseInt(arg.substring("--start=".length()));
+            } else if (arg.startsWith("--end=")) {
+                endFrame = Integer.parseInt(arg.substring("--end=".length()));
+            } else if (arg.startsWith("--frames=")) {
+                framesFolder = new File(arg.substring("--frames=".length()));
+            } else if (arg.startsWith("--video=")) {
+                videoFile = new File(arg.substring("--video=".length()));
+            } else if (arg.startsWith("--raw=")) {
+                rawOutput = arg.substring("--raw=".length());
+            } else if (arg.startsWith("--size=")) {
+                layout = Layout.parse(arg.substring("--size=".length()), VisApplet.DISPLAY_RANKS);
+            } else if (arg.startsWith("--metrics=")) {
+                metricsFile = new File(arg.substring("--metrics=".length()));
+            } else {
+                sketchFolder = new File(arg);
+            }
+        }
+
+        OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        if ("-".equals(rawOutput)) {
+            // keep anything else that gets printed out of the video stream
+            System.setOut(System.err);
+        }
+
+        VisApplet sketch = new VisApplet();
+        if (layout != null) sketch.layout = layout;
+        sketch.initHeadless(sketchFolder);
+        sketch.metricsFile = metricsFile;
+        sketch.waitForAvatars = true; // frames must not depend on how fast pictures load
+        sketch.g.beginDraw();
+        sketch.setup();
+        sketch.g.endDraw();
+        if (endFrame == -1) endFrame = sketch.getFrameCount();
+
+        FrameSink sink;
+        int bufferCount = threads*2;
+        if (videoFile != null) {
+            sink = FfmpegSink.start(videoFile, sketch.layout.width, sketch.layout.height, VisApplet.FRAME_RATE, bufferCount, startFrame);
+        } else if (rawOutput != null) {
+            OutputStream out = rawOutput.equals("-") ? stdout : new FileOutputStream(rawOutput);
+            sink = new RawVideoSink(new BufferedOutputStream(out, 1 << 20), sketch.layout.width, sketch.layout.height, bufferCount, startFrame);
+        } else {
+            sink = new PngSequenceSink(framesFolder);
+        }
+        new FrameExporter(sketch, threads, sink).export(startFrame, endFrame);
+        if (metricsFile != null) {
+            sketch.profiler.write(metricsFile);
+            System.err.printf("Saved frame timings to %s (p50 %.2fms, p99 %.2fms)%n", metricsFile,
+                    sketch.profiler.getPercentile(50, 0)/1e6, sketch.profiler.getPercentile(99, 0)/1e6);
+        }
+    }
+}
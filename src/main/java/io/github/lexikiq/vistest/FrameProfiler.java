@@ -0,0 +1,214 @@
+package io.github.lexikiq.vistest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records how long each part of every frame took, plus how much memory the drawing thread allocated and how much
+ * the garbage collector ran in the meantime.
+ * <p>
+ * The draw phases (ticks, background, bars) add up to roughly the frame time. The sub-steps (text, images, tick
+ * labels) are measured inside of those phases and overlap them, e.g. tick label text counts towards both
+ * {@link #TEXT} and {@link #TICK_LABELS}. Each profiler must only be used by one thread; parallel renderers get
+ * their own and are {@link #addAll(FrameProfiler) merged} afterwards. Profilers that are only shown on screen can keep
+ * just the most recent frames, so a long session doesn't keep every frame's sample around.
+ */
+public class FrameProfiler {
+    public static final int TICKS = 0;
+    public static final int BACKGROUND = 1;
+    public static final int BARS = 2;
+    public static final int TEXT = 3; // drawing and measuring text
+    public static final int IMAGES = 4; // drawing (and scaling) images
+    public static final int TICK_LABELS = 5; // formatting and drawing the tick mark labels
+    public static final String[] PHASE_NAMES = {"ticks", "background", "bars", "text", "images", "tick_labels"};
+
+    private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final List<Sample> samples = new ArrayList<Sample>();
+    private final int maxSamples; // 0 keeps every sample
+    private final long[] phaseTimes = new long[PHASE_NAMES.length];
+    private int frame;
+    private long frameStart;
+    private long allocatedStart;
+    private long gcCountStart;
+    private long gcTimeStart;
+
+    public FrameProfiler() {
+        this(0);
+    }
+
+    /**
+     * @param maxSamples how many of the most recent samples to keep, or 0 to keep all of them (i.e. to save them)
+     */
+    public FrameProfiler(int maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        // allocation counters are a HotSpot extension, so just skip them on other JVMs
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) return bean;
+        }
+        return null;
+    }
+
+    private static long getAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * One frame's measurements. Times are in nanoseconds, GC time in milliseconds.
+     */
+    public static class Sample {
+        public final int frame;
+        public final long totalTime;
+        public final long[] phaseTimes;
+        public final long allocatedBytes; // -1 if unsupported
+        public final long gcCount; // collections during the frame, on any thread
+        public final long gcTime;
+
+        public Sample(int frame, long totalTime, long[] phaseTimes, long allocatedBytes, long gcCount, long gcTime) {
+            this.frame = frame;
+            this.totalTime = totalTime;
+            this.phaseTimes = phaseTimes;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+    }
+
+    public void beginFrame(int frame) {
+        this.frame = frame;
+        Arrays.fill(phaseTimes, 0);
+        gcCountStart = 0;
+        gcTimeStart = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            gcCountStart += collector.getCollectionCount();
+            gcTimeStart += collector.getCollectionTime();
+        }
+        allocatedStart = getAllocatedBytes();
+        frameStart = System.nanoTime();
+    }
+
+    /**
+     * Adds time spent in a phase or sub-step of the current frame.
+     */
+    public void add(int phase, long nanos) {
+        phaseTimes[phase] += nanos;
+    }
+
+    public void endFrame() {
+        long totalTime = System.nanoTime() - frameStart;
+        long allocated = allocatedStart == -1 ? -1 : getAllocatedBytes() - allocatedStart;
+        long gcCount = -gcCountStart;
+        long gcTime = -gcTimeStart;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            gcCount += collector.getCollectionCount();
+            gcTime += collector.getCollectionTime();
+        }
+        samples.add(new Sample(frame, totalTime, phaseTimes.clone(), allocated, gcCount, gcTime));
+        // drop old samples in batches so the list isn't shifted every frame
+        if (maxSamples > 0 && samples.size() >= maxSamples*2) samples.subList(0, samples.size() - maxSamples).clear();
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    public Sample getLastSample() {
+        return samples.isEmpty() ? null : samples.get(samples.size()-1);
+    }
+
+    /**
+     * Adds the samples of another profiler, i.e. one of a parallel renderer.
+     */
+    public void addAll(FrameProfiler other) {
+        samples.addAll(other.samples);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @param lastFrames how many of the most recent samples to consider, or 0 for all of them
+     * @return the total frame time (in nanoseconds) at the given percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile, int lastFrames) {
+        int from = lastFrames <= 0 ? 0 : Math.max(0, samples.size() - lastFrames);
+        long[] times = new long[samples.size() - from];
+        if (times.length == 0) return 0;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = samples.get(from + i).totalTime;
+        }
+        Arrays.sort(times);
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100 * times.length);
+        return times[Math.max(0, Math.min(times.length-1, rank-1))];
+    }
+
+    /**
+     * Writes every sample ordered by frame, as JSON if the file name ends in ".json" and as CSV otherwise.
+     * The JSON version also includes frame time percentiles.
+     */
+    public void write(File file) throws IOException {
+        List<Sample> sorted = new ArrayList<Sample>(samples);
+        sorted.sort(Comparator.comparingInt(sample -> sample.frame));
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            if (file.getName().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                writeJson(out, sorted);
+            } else {
+                writeCsv(out, sorted);
+            }
+            // PrintWriter swallows IOExceptions
+            if (out.checkError()) throw new IOException("Could not write " + file);
+        }
+    }
+
+    private void writeCsv(PrintWriter out, List<Sample> sorted) {
+        out.print("frame,total_ns");
+        for (String name : PHASE_NAMES) out.print("," + name + "_ns");
+        out.println(",allocated_bytes,gc_count,gc_ms");
+        for (Sample sample : sorted) {
+            out.print(sample.frame);
+            out.print(',');
+            out.print(sample.totalTime);
+            for (long time : sample.phaseTimes) {
+                out.print(',');
+                out.print(time);
+            }
+            out.println("," + sample.allocatedBytes + "," + sample.gcCount + "," + sample.gcTime);
+        }
+    }
+
+    private void writeJson(PrintWriter out, List<Sample> sorted) {
+        out.println("{");
+        out.printf(Locale.ROOT, "  \"percentiles_ns\": {\"p50\": %d, \"p90\": %d, \"p95\": %d, \"p99\": %d, \"max\": %d},%n",
+                getPercentile(50, 0), getPercentile(90, 0), getPercentile(95, 0), getPercentile(99, 0), getPercentile(100, 0));
+        out.println("  \"frames\": [");
+        for (int s = 0; s < sorted.size(); s++) {
+            Sample sample = sorted.get(s);
+            out.print("    {\"frame\": " + sample.frame + ", \"total_ns\": " + sample.totalTime);
+            for (int p = 0; p < PHASE_NAMES.length; p++) {
+                out.print(", \"" + PHASE_NAMES[p] + "_ns\": " + sample.phaseTimes[p]);
+            }
+            out.print(", \"allocated_bytes\": " + sample.allocatedBytes + ", \"gc_count\": " + sample.gcCount
+                    + ", \"gc_ms\": " + sample.gcTime + "}");
+            out.println(s < sorted.size()-1 ? "," : "");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.lexikiq.vistest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Somewhere for exported frames to go.
+ */
+public interface FrameSink extends Closeable {
+    /**
+     * Writes a rendered frame. This may be called from several threads at once and in any frame order, so
+     * implementations that care about order have to restore it themselves. The pixel array belongs to the caller
+     * and may be reused as soon as this returns.
+     *
+     * @param frame the frame number
+     * @param pixels ARGB pixels, row by row
+     */
+    void writeFrame(int frame, int[] pixels, int width, int height) throws IOException;
+
+    /**
+     * Gives up on the export after a frame failed to render: frames still being waited on will never come, so any
+     * thread blocked in {@link #writeFrame(int, int[], int, int)} has to fail instead of waiting for them.
+     * {@link #close()} must still be called afterwards.
+     */
+    void abort(Throwable cause);
+}
@@ -0,0 +1,109 @@
+package io.github.lexikiq.vistest;
+
+/**
+ * Where everything goes on screen, worked out once from the resolution being rendered at.
+ * <p>
+ * All sizes are designed for {@link #BASE_WIDTH}x{@link #BASE_HEIGHT} and scaled by {@link #scale}, the largest
+ * factor that fits the base layout on screen, so a 4K render is the same picture in twice the detail and a small
+ * preview costs a fraction of the pixels. At the base resolution every value is exactly what it was before the
+ * layout became configurable. Layouts are never modified, so they can be shared between parallel renderers.
+ */
+public class Layout {
+    public static final int BASE_WIDTH = 1920;
+    public static final int BASE_HEIGHT = 1080;
+    public static final float BAR_PROPORTION = 0.7f; // how much space the bar should fill up as a percentage
+
+    public final int width; // screen width
+    public final int height; // screen height
+    public final int displayRanks; // how many people to display (ie top 10)
+    public final float scale;
+
+    public final int xMin;
+    public final int xMax;
+    public final int yMin;
+    public final int yMax;
+    public final int drawWidth;
+    public final int drawHeight;
+
+    public final int triangleSize;
+    public final int barHeight;
+    public final int barHeightHalf;
+    public final int barMaxX;
+
+    public final int nameFontSize;
+    public final int dateFontSize;
+    public final int commentFontSize;
+    public final int tickFontSize;
+
+    public final int platformMargin;
+    public final int titleTopMargin;
+    public final int titleSideMargin;
+    public final int nameTextOffset;
+    public final int imagePadding;
+    public final int flagDimensions;
+    public final int avatarDimensions;
+    public final int multiPadding;
+    public final int multiMinPadding;
+
+    public Layout(int width, int height, int displayRanks) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid resolution " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.displayRanks = displayRanks;
+        scale = Math.min((float) width / BASE_WIDTH, (float) height / BASE_HEIGHT);
+
+        xMin = px(80);
+        xMax = width - px(150);
+        yMin = px(200);
+        yMax = height - px(25);
+        drawWidth = xMax - xMin;
+        drawHeight = yMax - yMin;
+
+        triangleSize = px(20);
+        // bars (and the pictures and text in them) keep their proportions on screens taller than the base one
+        float baseRowHeight = (float) (px(BASE_HEIGHT) - yMin - px(25)) / displayRanks;
+        barHeight = (int) (Math.min(rankToY(1) - rankToY(0), baseRowHeight) * BAR_PROPORTION);
+        barHeightHalf = barHeight / 2;
+        barMaxX = xMax - triangleSize;
+
+        nameFontSize = px(54);
+        dateFontSize = px(96);
+        commentFontSize = px(24);
+        tickFontSize = px(50);
+
+        platformMargin = px(8);
+        titleTopMargin = px(96);
+        titleSideMargin = px(20);
+        nameTextOffset = px(14);
+        imagePadding = px(4);
+        flagDimensions = barHeight - imagePadding;
+        avatarDimensions = barHeight - imagePadding*2;
+        multiPadding = px(25);
+        multiMinPadding = px(16);
+    }
+
+    /**
+     * Reads a resolution like "3840x2160".
+     */
+    public static Layout parse(String resolution, int displayRanks) {
+        int separator = resolution.toLowerCase().indexOf('x');
+        if (separator == -1) throw new IllegalArgumentException("Invalid resolution " + resolution + ", expected i.e. 1920x1080");
+        return new Layout(Integer.parseInt(resolution.substring(0, separator).trim()),
+                Integer.parseInt(resolution.substring(separator+1).trim()), displayRanks);
+    }
+
+    /**
+     * @return a distance of {@code basePixels} at the base resolution, scaled to this one
+     */
+    public int px(float basePixels) {
+        return Math.round(basePixels * scale);
+    }
+
+    public float valueToX(float value, float scale) {
+        return VisApplet.lerp(xMin, xMax*0.95f, value/scale);
+    }
+
+    public float rankToY(float rank) {
+        return yMin + rank * ((float) drawHeight/displayRanks);
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.lexikiq.vistest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Saves each frame as a numbered PNG (frame-000000.png, frame-000001.png, ...), i.e. for
+ * {@code ffmpeg -framerate 60 -i frame-%06d.png}. Frames are encoded on the thread that rendered them.
+ */
+public class PngSequenceSink implements FrameSink {
+    private final File folder;
+
+    public PngSequenceSink(File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Could not create " + folder);
+        this.folder = folder;
+    }
+
+    public void writeFrame(int frame, int[] pixels, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        ImageIO.write(image, "png", new File(folder, String.format("frame-%06d.png", frame)));
+    }
+
+    public void abort(Throwable cause) {
+    }
+
+    public void close() {
+    }
+}
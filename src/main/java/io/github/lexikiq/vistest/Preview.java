@@ -0,0 +1,143 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PConstants;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * Plays the timeline back by the clock instead of one frame per draw, for quickly looking through a category.
+ * <p>
+ * Playback moves {@code speed} times faster than the final video and skips whatever frames it doesn't have time to
+ * draw; since every frame only depends on its own day, seeking is just jumping to another frame. If frames keep
+ * taking longer than the frame rate allows, the {@link #getQuality() quality} drops one level at a time:
+ * <ol>
+ *     <li>{@link #NO_DETAILS}: no profile pictures or run comments</li>
+ *     <li>{@link #SIMPLE_TEXT}: no category or platform labels either</li>
+ *     <li>{@link #LOW_RESOLUTION}: drawn at half the resolution and scaled up</li>
+ * </ol>
+ * and comes back up once frames are fast again.
+ * <p>
+ * Keys: space pauses, left/right seek a month (a year with shift), up/down double/halve the speed, home goes back
+ * to the start and Q toggles the automatic quality. Clicking seeks to that point of the timeline.
+ */
+public class Preview {
+    public static final int FULL_QUALITY = 0;
+    public static final int NO_DETAILS = 1;
+    public static final int SIMPLE_TEXT = 2;
+    public static final int LOW_RESOLUTION = 3;
+    public static final String[] QUALITY_NAMES = {"full", "no details", "simple text", "low resolution"};
+
+    public static final int SEEK_DAYS = 30;
+    public static final int SEEK_DAYS_FAR = 365;
+    public static final float MAX_SPEED = 256f;
+    public static final float MIN_SPEED = 1f/8f;
+    public static final int QUALITY_HOLD_FRAMES = 30; // how long to wait after changing the quality before changing it again
+    public static final char AUTO_QUALITY_KEY = 'q';
+
+    private final int frameCount;
+    private final long frameBudget; // nanoseconds per frame at the sketch's frame rate
+    private double position = 0; // in frames
+    private float speed = 1f;
+    private boolean paused = false;
+    private boolean autoQuality = true;
+    private int quality = FULL_QUALITY;
+    private int framesAtQuality = 0;
+    private double averageDrawTime = 0; // moving average, in nanoseconds
+    private long lastUpdate = -1;
+
+    public Preview(int frameCount, int frameRate) {
+        this.frameCount = frameCount;
+        frameBudget = 1_000_000_000L / frameRate;
+    }
+
+    /**
+     * Moves playback forward by the time since the last call.
+     *
+     * @return the frame to draw now
+     */
+    public int update() {
+        long now = System.nanoTime();
+        if (lastUpdate != -1 && !paused) {
+            position += (now - lastUpdate) / (double) frameBudget * speed;
+        }
+        lastUpdate = now;
+        if (position >= frameCount-1) {
+            position = frameCount-1;
+            paused = true;
+        }
+        return getFrame();
+    }
+
+    /**
+     * Records how long the last frame took to draw, lowering or raising the quality if needed.
+     */
+    public void frameDrawn(long nanos) {
+        averageDrawTime = averageDrawTime == 0 ? nanos : averageDrawTime * 0.9 + nanos * 0.1;
+        framesAtQuality++;
+        if (!autoQuality || framesAtQuality < QUALITY_HOLD_FRAMES) return;
+        if (averageDrawTime > frameBudget && quality < LOW_RESOLUTION) {
+            setQuality(quality+1);
+        } else if (averageDrawTime < frameBudget / 3 && quality > FULL_QUALITY) {
+            // well under budget, so the next level up should fit too
+            setQuality(quality-1);
+        }
+    }
+
+    private void setQuality(int quality) {
+        this.quality = quality;
+        framesAtQuality = 0;
+        averageDrawTime = 0;
+    }
+
+    public int getFrame() {
+        return (int) position;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public void seekFrame(double frame) {
+        position = Math.max(0, Math.min(frameCount-1, frame));
+        if (position < frameCount-1) paused = false;
+    }
+
+    public void seekDays(float days) {
+        seekFrame(position + days * VisApplet.FRAMES_PER_DAY);
+    }
+
+    public void keyPressed(char key, int keyCode, boolean shift) {
+        if (key == ' ') {
+            paused = !paused;
+        } else if (key == AUTO_QUALITY_KEY) {
+            autoQuality = !autoQuality;
+            if (!autoQuality) setQuality(FULL_QUALITY);
+        } else if (key == PConstants.CODED && keyCode == PConstants.LEFT) {
+            seekDays(-(shift ? SEEK_DAYS_FAR : SEEK_DAYS));
+        } else if (key == PConstants.CODED && keyCode == PConstants.RIGHT) {
+            seekDays(shift ? SEEK_DAYS_FAR : SEEK_DAYS);
+        } else if (key == PConstants.CODED && keyCode == PConstants.UP) {
+            speed = Math.min(MAX_SPEED, speed*2);
+        } else if (key == PConstants.CODED && keyCode == PConstants.DOWN) {
+            speed = Math.max(MIN_SPEED, speed/2);
+        } else if (key == PConstants.CODED && keyCode == KeyEvent.VK_HOME) {
+            seekFrame(0);
+        }
+    }
+
+    /**
+     * Seeks to the same fraction of the timeline as {@code x} is of the screen's width.
+     */
+    public void mousePressed(int x, int width) {
+        seekFrame((double) x / width * (frameCount-1));
+    }
+
+    /**
+     * @return a one line summary of the playback state, i.e. for an overlay
+     */
+    public String getStatus() {
+        String speedText = speed < 1 ? "1/" + Math.round(1/speed) : String.valueOf((int) speed);
+        return String.format("%s %sx | frame %d/%d | quality: %s%s", paused ? "paused" : "playing", speedText,
+                getFrame(), frameCount-1, QUALITY_NAMES[quality], autoQuality ? " (auto)" : "");
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.lexikiq.vistest;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the runners of a runs.csv file (by column) sorted by their current time as runs are added and removed.
+ * <p>
+ * Entries are ordered by primitive {@code long} keys (sortable time bits, then column), so ties are ordered by
+ * column just like a stable sort over the row would order them. The entries form a treap whose nodes are the
+ * columns themselves (each column is in the ranking at most once), stored in primitive arrays along with the size of
+ * every subtree. Setting or removing a column and looking up a rank are therefore O(log n) no matter how many
+ * runners there are, and nothing is allocated after construction.
+ */
+public class RankingIndex {
+    private static final int NONE = -1;
+
+    private final float[] values;
+    private final boolean[] present;
+    private final int[] left;
+    private final int[] right;
+    private final int[] sizes;
+    private final int[] priorities;
+    private int root = NONE;
+    // results of split(), which returns two trees
+    private int splitLeft;
+    private int splitRight;
+
+    public RankingIndex(int columns) {
+        values = new float[columns];
+        present = new boolean[columns];
+        left = new int[columns];
+        right = new int[columns];
+        sizes = new int[columns];
+        priorities = new int[columns];
+        for (int c = 0; c < columns; c++) {
+            // any well-mixed priorities keep the tree balanced; they're derived from the column to stay deterministic
+            int h = c * 0x9E3779B9;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            priorities[c] = h;
+        }
+        Arrays.fill(left, NONE);
+        Arrays.fill(right, NONE);
+    }
+
+    private static long key(int column, float value) {
+        int bits = Float.floatToIntBits(value);
+        bits ^= (bits >> 31) & 0x7fffffff; // make negative floats sort below positive ones
+        return ((long) bits << 32) | column;
+    }
+
+    private long key(int column) {
+        return key(column, values[column]);
+    }
+
+    private int size(int node) {
+        return node == NONE ? 0 : sizes[node];
+    }
+
+    private void update(int node) {
+        sizes[node] = 1 + size(left[node]) + size(right[node]);
+    }
+
+    /**
+     * Splits a tree into the nodes with keys below {@code key} ({@link #splitLeft}) and the rest ({@link #splitRight}).
+     */
+    private void split(int node, long key) {
+        if (node == NONE) {
+            splitLeft = NONE;
+            splitRight = NONE;
+        } else if (key(node) < key) {
+            split(right[node], key);
+            right[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        } else {
+            split(left[node], key);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+        }
+    }
+
+    /**
+     * Joins two trees where every key of {@code a} is below every key of {@code b}.
+     */
+    private int merge(int a, int b) {
+        if (a == NONE) return b;
+        if (b == NONE) return a;
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Sets (or updates) the time of a column.
+     */
+    public void set(int column, float value) {
+        if (present[column]) {
+            if (values[column] == value) return;
+            remove(column);
+        }
+
+        values[column] = value;
+        present[column] = true;
+        left[column] = NONE;
+        right[column] = NONE;
+        sizes[column] = 1;
+        split(root, key(column));
+        int below = splitLeft;
+        int above = splitRight;
+        root = merge(merge(below, column), above);
+    }
+
+    /**
+     * Removes a column from the ranking, if present.
+     */
+    public void remove(int column) {
+        if (!present[column]) return;
+        long key = key(column);
+        split(root, key);
+        int below = splitLeft;
+        // keys are unique, so the next split leaves just the column on its left
+        split(splitRight, key+1);
+        root = merge(below, splitRight);
+        present[column] = false;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * @return the column at the given rank (0 being the fastest)
+     */
+    public int getColumn(int rank) {
+        int node = root;
+        while (true) {
+            int leftSize = size(left[node]);
+            if (rank < leftSize) {
+                node = left[node];
+            } else if (rank == leftSize) {
+                return node;
+            } else {
+                rank -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    /**
+     * @return the time at the given rank (0 being the fastest)
+     */
+    public float getValue(int rank) {
+        return values[getColumn(rank)];
+    }
+}
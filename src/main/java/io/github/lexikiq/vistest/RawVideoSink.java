@@ -0,0 +1,136 @@
+package io.github.lexikiq.vistest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams frames as raw 24-bit RGB (ffmpeg's {@code -f rawvideo -pix_fmt rgb24}) to an output stream, in order.
+ * <p>
+ * Frames are converted into one of a fixed number of reusable buffers on the thread that rendered them, and a
+ * dedicated writer thread drains the buffers in frame order. A renderer can therefore move on to its next frame
+ * while the previous one is still being written, and only blocks if it gets more than {@code bufferCount} frames
+ * ahead of the writer.
+ */
+public class RawVideoSink implements FrameSink {
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final byte[][] buffers;
+    private final boolean[] ready;
+    private final Thread writer;
+    private int nextFrame; // next frame to be written
+    private boolean closing = false;
+    private IOException error = null;
+    private boolean aborted = false;
+
+    /**
+     * @param bufferCount how many frames may be waiting to be written at once (at least 2)
+     * @param firstFrame the number of the first frame that will be written
+     */
+    public RawVideoSink(OutputStream out, int width, int height, int bufferCount, int firstFrame) {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        buffers = new byte[Math.max(2, bufferCount)][width*height*3];
+        ready = new boolean[buffers.length];
+        nextFrame = firstFrame;
+        writer = new Thread(this::writeFrames, "RawVideoSink writer");
+        writer.start();
+    }
+
+    public void writeFrame(int frame, int[] pixels, int width, int height) throws IOException {
+        if (width != this.width || height != this.height) {
+            throw new IllegalArgumentException("Frame is " + width + "x" + height + ", expected " + this.width + "x" + this.height);
+        }
+
+        int slot = frame % buffers.length;
+        synchronized (this) {
+            // wait for the writer to free up this frame's buffer
+            while (frame >= nextFrame + buffers.length && error == null) {
+                waitUninterruptibly();
+            }
+            if (error != null) throw error;
+        }
+
+        byte[] buffer = buffers[slot];
+        for (int i = 0, b = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            buffer[b++] = (byte) (pixel >> 16);
+            buffer[b++] = (byte) (pixel >> 8);
+            buffer[b++] = (byte) pixel;
+        }
+
+        synchronized (this) {
+            ready[slot] = true;
+            notifyAll();
+        }
+    }
+
+    private void writeFrames() {
+        while (true) {
+            int slot;
+            synchronized (this) {
+                slot = nextFrame % buffers.length;
+                while (!ready[slot] && !closing && error == null) {
+                    waitUninterruptibly();
+                }
+                if (!ready[slot] || error != null) return; // closing and nothing left to write, or aborted
+            }
+
+            try {
+                out.write(buffers[slot]);
+            } catch (IOException e) {
+                synchronized (this) {
+                    error = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                ready[slot] = false;
+                nextFrame++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a frame buffer", e);
+        }
+    }
+
+    /**
+     * Makes blocked and later {@link #writeFrame(int, int[], int, int)} calls throw, and stops the writer after the
+     * frame it is writing.
+     */
+    public void abort(Throwable cause) {
+        synchronized (this) {
+            if (error == null) error = new IOException("Export was aborted", cause);
+            aborted = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits for every submitted frame to be written (unless aborted), then closes the output stream.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        // an aborted export already failed with its own cause
+        if (error != null && !aborted) throw error;
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.lexikiq.vistest;
+
+import processing.data.JSONObject;
+
+/**
+ * A single run, with the text its bar shows worked out ahead of time. Runs are numbered by their position in
+ * {@link VisApplet#runTable} and never change once loaded, so they're shared between parallel renderers.
+ */
+public class Run {
+    private final int index; // position in VisApplet.runTable
+    private final String id;
+    private final float time;
+    private final String comment;
+    private final String category;
+    private final String region;
+    private final String platform;
+    private final boolean emulated;
+    private final String commentLine; // first line of the comment, as shown under the bar
+    private final String platformLabel;
+
+    public Run(int index, String id, float time, String comment, String category, String region, String platform, boolean emulated) {
+        this.index = index;
+        this.id = id;
+        this.time = time;
+        this.comment = comment;
+        // the same few categories, regions and platforms repeat across thousands of runs
+        this.category = category == null ? null : category.intern();
+        this.region = region == null ? null : region.intern();
+        this.platform = platform == null ? null : platform.intern();
+        this.emulated = emulated;
+        commentLine = initCommentLine();
+        platformLabel = initPlatformLabel().intern();
+    }
+
+    private String initCommentLine() {
+        if (comment == null) return null;
+        String[] lines = comment.split("\r?\n");
+        return lines.length > 1 ? lines[0] + " [...]" : lines[0];
+    }
+
+    private String initPlatformLabel() {
+        StringBuilder label = new StringBuilder();
+        if (region != null) label.append(region.split(" / ")[0]);
+        if (platform != null) {
+            if (label.length() > 0) label.append(' ');
+            label.append(platform);
+        }
+        if (emulated) label.append(" emu");
+        return label.toString();
+    }
+
+    /**
+     * Reads a run from the "runs" object of metadata.json, shortening its platform name.
+     */
+    public static Run fromJSON(int index, String id, JSONObject run) {
+        String platform = run.isNull("platform") ? null : VisApplet.getShortPlatform(run.getString("platform"));
+        return new Run(
+                index,
+                id,
+                run.getFloat("time_t"),
+                run.isNull("comment") ? null : run.getString("comment"),
+                run.getString("category", null),
+                run.isNull("region") ? null : run.getString("region"),
+                platform,
+                run.getBoolean("emulated")
+        );
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public float getTime() {
+        return this.time;
+    }
+
+    public String getComment() {
+        return this.comment;
+    }
+
+    public String getCategory() {
+        return this.category;
+    }
+
+    public String getRegion() {
+        return this.region;
+    }
+
+    public String getPlatform() {
+        return this.platform;
+    }
+
+    public boolean isEmulated() {
+        return this.emulated;
+    }
+
+    /**
+     * @return the first line of the comment (marked if there's more), or null if there's no comment
+     */
+    public String getCommentLine() {
+        return this.commentLine;
+    }
+
+    /**
+     * @return the region and platform, i.e. "NTSC N64 emu"
+     */
+    public String getPlatformLabel() {
+        return this.platformLabel;
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.lexikiq.vistest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streams the rows of a runs.csv file out of a memory-mapped buffer.
+ * <p>
+ * Each row is a date followed by one run ID per runner (or nothing if the runner has no run yet). Since a runner's
+ * run ID rarely changes between days, a cell that matches the previous row's cell in that column returns the very
+ * same String instance, so only new run IDs are ever allocated and callers can compare cells by reference (and the
+ * columns whose cell did change are reported as the day's changes).
+ */
+public class RunsCsvReader implements RunsReader {
+    private final MappedByteBuffer buffer;
+    private final String[] header;
+    private final String[] cells;
+    private final int rowCount;
+    private final int[] rowStarts; // where each data row starts, to seek to it
+    private final int[] changeColumns;
+    private int changeCount;
+    private byte[] scratch = new byte[16];
+    private int position;
+    private int year;
+    private int month;
+    private int day;
+
+    public RunsCsvReader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large to be mapped");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // the start of every line with content (the first one being the header)
+        int[] lineStarts = new int[1024];
+        int lines = 0;
+        boolean lineHasContent = false;
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                lineHasContent = false;
+            } else if (b != '\r' && !lineHasContent) {
+                lineHasContent = true;
+                if (lines == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lines*2);
+                lineStarts[lines++] = i;
+            }
+        }
+        rowCount = Math.max(0, lines - 1);
+        rowStarts = rowCount == 0 ? new int[0] : Arrays.copyOfRange(lineStarts, 1, lines);
+
+        int end = lineEnd(0);
+        header = new String(readBytes(0, end), 0, end, StandardCharsets.UTF_8).split(",");
+        position = skipLineBreak(end);
+        cells = new String[header.length];
+        changeColumns = new int[header.length];
+    }
+
+    private RunsCsvReader(RunsCsvReader reader) {
+        buffer = reader.buffer;
+        header = reader.header;
+        rowCount = reader.rowCount;
+        rowStarts = reader.rowStarts;
+        cells = new String[header.length];
+        changeColumns = new int[header.length];
+        seek(0);
+    }
+
+    @Override
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the number of data rows in the file, not counting the header
+     */
+    @Override
+    public int getDayCount() {
+        return rowCount;
+    }
+
+    /**
+     * Advances to the next data row.
+     * @return false if there are no rows left
+     */
+    @Override
+    public boolean nextDay() {
+        changeCount = 0;
+        int limit = buffer.limit();
+        // skip blank lines
+        while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r')) position++;
+        if (position >= limit) return false;
+
+        // date (yyyy-mm-dd)
+        year = 0;
+        month = 0;
+        day = 0;
+        int datePart = 0;
+        byte b;
+        while (position < limit && (b = buffer.get(position)) != ',' && b != '\n' && b != '\r') {
+            if (b == '-') {
+                datePart++;
+            } else if (datePart == 0) {
+                year = year*10 + (b - '0');
+            } else if (datePart == 1) {
+                month = month*10 + (b - '0');
+            } else {
+                day = day*10 + (b - '0');
+            }
+            position++;
+        }
+
+        // run IDs
+        int column = 1;
+        while (position < limit && buffer.get(position) == ',') {
+            position++;
+            int start = position;
+            int end = cellEnd(start);
+            if (column < cells.length) {
+                if (end == start) {
+                    if (cells[column] != null) {
+                        cells[column] = null;
+                        changeColumns[changeCount++] = column;
+                    }
+                } else if (!matches(cells[column], start, end)) {
+                    cells[column] = new String(readBytes(start, end), 0, end-start, StandardCharsets.US_ASCII);
+                    changeColumns[changeCount++] = column;
+                }
+            }
+            column++;
+            position = end;
+        }
+        // columns missing from the end of the row are empty
+        for (int c = column; c < cells.length; c++) {
+            if (cells[c] != null) {
+                cells[c] = null;
+                changeColumns[changeCount++] = c;
+            }
+        }
+
+        position = skipLineBreak(position);
+        return true;
+    }
+
+    /**
+     * Reads the row of the day before {@code day} in full.
+     */
+    @Override
+    public void seek(int day) {
+        Arrays.fill(cells, null);
+        if (day > 0) {
+            position = rowStarts[day-1];
+            nextDay();
+        } else {
+            position = rowCount == 0 ? buffer.limit() : rowStarts[0];
+        }
+        changeCount = 0;
+    }
+
+    @Override
+    public RunsReader copy() {
+        return new RunsCsvReader(this);
+    }
+
+    @Override
+    public int getYear() {
+        return year;
+    }
+
+    @Override
+    public int getMonth() {
+        return month;
+    }
+
+    @Override
+    public int getDay() {
+        return day;
+    }
+
+    /**
+     * @return the run ID in the given column of the current row, or null if the cell is empty
+     */
+    @Override
+    public String getCell(int column) {
+        return cells[column];
+    }
+
+    @Override
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    @Override
+    public int getChangeColumn(int change) {
+        return changeColumns[change];
+    }
+
+    private boolean matches(String previous, int start, int end) {
+        if (previous == null || previous.length() != end - start) return false;
+        for (int i = start; i < end; i++) {
+            if (previous.charAt(i - start) != buffer.get(i)) return false;
+        }
+        return true;
+    }
+
+    private byte[] readBytes(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length*2)];
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return scratch;
+    }
+
+    private int cellEnd(int start) {
+        int limit = buffer.limit();
+        int i = start;
+        byte b;
+        while (i < limit && (b = buffer.get(i)) != ',' && b != '\n' && b != '\r') i++;
+        return i;
+    }
+
+    private int lineEnd(int start) {
+        int limit = buffer.limit();
+        int i = start;
+        byte b;
+        while (i < limit && (b = buffer.get(i)) != '\n' && b != '\r') i++;
+        return i;
+    }
+
+    private int skipLineBreak(int i) {
+        if (i < buffer.limit() && buffer.get(i) == '\r') i++;
+        if (i < buffer.limit() && buffer.get(i) == '\n') i++;
+        return i;
+    }
+}
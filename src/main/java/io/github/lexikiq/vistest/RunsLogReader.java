@@ -0,0 +1,291 @@
+package io.github.lexikiq.vistest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Reads the event log form of runs.csv (runs_log.csv) out of a memory-mapped buffer.
+ * <p>
+ * The header is the same as runs.csv's. Every other line starts with a date, and lines are in date order:
+ * <ul>
+ *     <li>{@code 2020-01-31,COLUMN,RUN} is an event: from that day on, the runner in that column (an index into the
+ *     header) has that run, or none if the run ID is empty</li>
+ *     <li>{@code 2020-01-31,*,RUN,RUN,...} is a snapshot: everyone's run at the end of that day, like a runs.csv row</li>
+ * </ul>
+ * The timeline spans from the date of the first line to the date of the last one (which {@link RunsLogWriter} always
+ * ends on a snapshot). Reading day by day only ever looks at the events, so it takes time in proportion to the number
+ * of runs instead of days times runners, and {@link #seek(int)} starts from the closest snapshot before the day
+ * instead of the start of the file.
+ */
+public class RunsLogReader implements RunsReader {
+    public static final String FILE_NAME = "runs_log.csv";
+
+    private final MappedByteBuffer buffer;
+    private final String[] header;
+    private final int dataStart;
+    private final long firstEpochDay;
+    private final int dayCount;
+    private final int[] snapshotDays;
+    private final int[] snapshotStarts;
+    private final String[] cells;
+    private final int[] changeColumns;
+    private final int[] changeDays; // the day each column last changed on, so it's only reported once a day
+    private int changeCount;
+    private byte[] scratch = new byte[16];
+    private int position;
+    private int day;
+    private LocalDate date;
+
+    public RunsLogReader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large to be mapped");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int end = lineEnd(0);
+        header = new String(readBytes(0, end), 0, end, StandardCharsets.UTF_8).split(",");
+        dataStart = skipLineBreaks(end);
+
+        // find the span of the log and index its snapshots
+        long first = 0;
+        long last = -1;
+        int snapshots = 0;
+        int[] days = new int[16];
+        int[] starts = new int[16];
+        for (int i = dataStart; i < buffer.limit(); i = skipLineBreaks(lineEnd(i))) {
+            long epochDay = readEpochDay(i);
+            if (last == -1) first = epochDay;
+            if (epochDay < last) throw new IOException(file + " is not in date order");
+            last = epochDay;
+            if (isSnapshot(i)) {
+                if (snapshots == days.length) {
+                    days = Arrays.copyOf(days, snapshots*2);
+                    starts = Arrays.copyOf(starts, snapshots*2);
+                }
+                days[snapshots] = (int) (epochDay - first);
+                starts[snapshots] = i;
+                snapshots++;
+            }
+        }
+        firstEpochDay = first;
+        dayCount = (int) (last - first + 1);
+        snapshotDays = Arrays.copyOf(days, snapshots);
+        snapshotStarts = Arrays.copyOf(starts, snapshots);
+
+        cells = new String[header.length];
+        changeColumns = new int[header.length];
+        changeDays = new int[header.length];
+        seek(0);
+    }
+
+    private RunsLogReader(RunsLogReader reader) {
+        buffer = reader.buffer;
+        header = reader.header;
+        dataStart = reader.dataStart;
+        firstEpochDay = reader.firstEpochDay;
+        dayCount = reader.dayCount;
+        snapshotDays = reader.snapshotDays;
+        snapshotStarts = reader.snapshotStarts;
+        cells = new String[header.length];
+        changeColumns = new int[header.length];
+        changeDays = new int[header.length];
+        seek(0);
+    }
+
+    @Override
+    public String[] getHeader() {
+        return header;
+    }
+
+    @Override
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Advances to the next day, applying its events.
+     * @return false if there are no days left
+     */
+    @Override
+    public boolean nextDay() {
+        if (day+1 >= dayCount) return false;
+        day++;
+        date = LocalDate.ofEpochDay(firstEpochDay + day);
+        changeCount = 0;
+        while (position < buffer.limit() && readEpochDay(position) - firstEpochDay == day) {
+            // snapshots only repeat what the events already said
+            if (!isSnapshot(position)) readEvent(position, true);
+            position = skipLineBreaks(lineEnd(position));
+        }
+        return true;
+    }
+
+    /**
+     * Loads the closest snapshot before {@code day}, then applies the events from there up to it.
+     */
+    @Override
+    public void seek(int day) {
+        Arrays.fill(cells, null);
+        Arrays.fill(changeDays, -1);
+        int snapshot = Arrays.binarySearch(snapshotDays, day);
+        // the snapshot of the day itself already has that day's events, so take the one before it
+        snapshot = snapshot >= 0 ? snapshot-1 : -snapshot-2;
+        position = dataStart;
+        if (snapshot >= 0) {
+            readSnapshot(snapshotStarts[snapshot]);
+            position = skipLineBreaks(lineEnd(snapshotStarts[snapshot]));
+        }
+        while (position < buffer.limit() && readEpochDay(position) - firstEpochDay < day) {
+            if (!isSnapshot(position)) readEvent(position, false);
+            position = skipLineBreaks(lineEnd(position));
+        }
+        this.day = day-1;
+        date = LocalDate.ofEpochDay(firstEpochDay + this.day);
+        changeCount = 0;
+    }
+
+    @Override
+    public RunsReader copy() {
+        return new RunsLogReader(this);
+    }
+
+    @Override
+    public int getYear() {
+        return date.getYear();
+    }
+
+    @Override
+    public int getMonth() {
+        return date.getMonthValue();
+    }
+
+    @Override
+    public int getDay() {
+        return date.getDayOfMonth();
+    }
+
+    /**
+     * @return the run ID the runner in the given column has on the current day, or null if they have none
+     */
+    @Override
+    public String getCell(int column) {
+        return cells[column];
+    }
+
+    @Override
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    @Override
+    public int getChangeColumn(int change) {
+        return changeColumns[change];
+    }
+
+    private void readEvent(int start, boolean recordChange) {
+        int i = start + 11; // past the date and its comma
+        int column = 0;
+        byte b;
+        while (i < buffer.limit() && (b = buffer.get(i)) != ',' && b != '\n' && b != '\r') {
+            column = column*10 + (b - '0');
+            i++;
+        }
+        if (column <= 0 || column >= cells.length) return;
+        int runStart = i < buffer.limit() && buffer.get(i) == ',' ? i+1 : i;
+        int runEnd = cellEnd(runStart);
+        if (!setCell(column, runStart, runEnd) || !recordChange) return;
+        if (changeDays[column] != day) {
+            changeDays[column] = day;
+            changeColumns[changeCount++] = column;
+        }
+    }
+
+    private void readSnapshot(int start) {
+        int i = start + 12; // past the date and the asterisk
+        for (int column = 1; i < buffer.limit() && buffer.get(i) == ','; column++) {
+            int cellStart = i+1;
+            i = cellEnd(cellStart);
+            if (column < cells.length) setCell(column, cellStart, i);
+        }
+    }
+
+    /**
+     * @return whether the cell changed
+     */
+    private boolean setCell(int column, int start, int end) {
+        if (end == start) {
+            if (cells[column] == null) return false;
+            cells[column] = null;
+        } else {
+            if (matches(cells[column], start, end)) return false;
+            cells[column] = new String(readBytes(start, end), 0, end-start, StandardCharsets.US_ASCII);
+        }
+        return true;
+    }
+
+    private boolean isSnapshot(int start) {
+        return start + 11 < buffer.limit() && buffer.get(start + 11) == '*';
+    }
+
+    /**
+     * @return the date (yyyy-mm-dd) at the start of the line, in days since the epoch
+     */
+    private long readEpochDay(int start) {
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int dayOfMonth = digits(start + 8, 2);
+        return LocalDate.of(year, month, dayOfMonth).toEpochDay();
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value*10 + (buffer.get(i) - '0');
+        }
+        return value;
+    }
+
+    private boolean matches(String previous, int start, int end) {
+        if (previous == null || previous.length() != end - start) return false;
+        for (int i = start; i < end; i++) {
+            if (previous.charAt(i - start) != buffer.get(i)) return false;
+        }
+        return true;
+    }
+
+    private byte[] readBytes(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length*2)];
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return scratch;
+    }
+
+    private int cellEnd(int start) {
+        int limit = buffer.limit();
+        int i = start;
+        byte b;
+        while (i < limit && (b = buffer.get(i)) != ',' && b != '\n' && b != '\r') i++;
+        return i;
+    }
+
+    private int lineEnd(int start) {
+        int limit = buffer.limit();
+        int i = start;
+        byte b;
+        while (i < limit && (b = buffer.get(i)) != '\n' && b != '\r') i++;
+        return i;
+    }
+
+    private int skipLineBreaks(int i) {
+        while (i < buffer.limit() && (buffer.get(i) == '\r' || buffer.get(i) == '\n')) i++;
+        return i;
+    }
+}
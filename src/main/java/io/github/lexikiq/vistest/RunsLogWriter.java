@@ -0,0 +1,149 @@
+package io.github.lexikiq.vistest;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Writes the event log read by {@link RunsLogReader}: one line for every change of a runner's run, plus a snapshot
+ * of everyone's runs every {@code snapshotDays} days (and on the first and last day).
+ * <p>
+ * Call {@link #day(LocalDate)} for every day with changes (in order), then {@link #set(int, String)} for the runs
+ * of that day; runs that didn't change are skipped, so a whole runs.csv row can be passed in as is.
+ */
+public class RunsLogWriter implements Closeable {
+    public static final int DEFAULT_SNAPSHOT_DAYS = 100;
+
+    private final Writer out;
+    private final String[] runs;
+    private final int snapshotDays;
+    private LocalDate date;
+    private String dateText;
+    private LocalDate lastSnapshot;
+    private int eventCount;
+    private int snapshotCount;
+
+    /**
+     * @param header "date" followed by the runner uuids, as in runs.csv
+     */
+    public RunsLogWriter(File file, String[] header, int snapshotDays) throws IOException {
+        if (snapshotDays <= 0) throw new IllegalArgumentException("Snapshots must be at least a day apart");
+        this.out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16);
+        this.runs = new String[header.length];
+        this.snapshotDays = snapshotDays;
+        out.write(String.join(",", header));
+        out.write('\n');
+    }
+
+    /**
+     * Moves on to a later day.
+     */
+    public void day(LocalDate date) throws IOException {
+        if (this.date != null) {
+            if (!date.isAfter(this.date)) throw new IllegalArgumentException(date + " is not after " + this.date);
+            // the first day always gets a snapshot so the log starts on it, even if nobody has a run yet
+            if (lastSnapshot == null || this.date.toEpochDay() - lastSnapshot.toEpochDay() >= snapshotDays) snapshot();
+        }
+        this.date = date;
+        dateText = date.toString();
+    }
+
+    /**
+     * Gives the runner in a column a run (or none if {@code runID} is null) from the current day on.
+     */
+    public void set(int column, String runID) throws IOException {
+        if (Objects.equals(runs[column], runID)) return;
+        runs[column] = runID;
+        out.write(dateText);
+        out.write(',');
+        out.write(Integer.toString(column));
+        out.write(',');
+        if (runID != null) out.write(runID);
+        out.write('\n');
+        eventCount++;
+    }
+
+    private void snapshot() throws IOException {
+        out.write(dateText);
+        out.write(",*");
+        for (int c = 1; c < runs.length; c++) {
+            out.write(',');
+            if (runs[c] != null) out.write(runs[c]);
+        }
+        out.write('\n');
+        lastSnapshot = date;
+        snapshotCount++;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * Ends the log with a snapshot of the last day, which marks where the timeline ends.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (date != null && !date.equals(lastSnapshot)) snapshot();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the rest of a reader's days into an event log.
+     * @return the (closed) writer, for its counts
+     */
+    public static RunsLogWriter convert(RunsReader reader, File output, int snapshotDays) throws IOException {
+        RunsLogWriter writer = new RunsLogWriter(output, reader.getHeader(), snapshotDays);
+        try {
+            while (reader.nextDay()) {
+                writer.day(LocalDate.of(reader.getYear(), reader.getMonth(), reader.getDay()));
+                for (int i = 0; i < reader.getChangeCount(); i++) {
+                    int column = reader.getChangeColumn(i);
+                    writer.set(column, reader.getCell(column));
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return writer;
+    }
+
+    /**
+     * Converts a sketch's data/runs.csv into data/runs_log.csv, which the sketch loads instead from then on.
+     * <p>
+     * Options: {@code --snapshot-days=N} (defaults to {@value #DEFAULT_SNAPSHOT_DAYS}), then optionally the sketch
+     * folder (defaults to the working directory).
+     */
+    public static void main(String[] args) throws IOException {
+        int snapshotDays = DEFAULT_SNAPSHOT_DAYS;
+        File sketchFolder = new File(".");
+        for (String arg : args) {
+            if (arg.startsWith("--snapshot-days=")) {
+                snapshotDays = Integer.parseInt(arg.substring("--snapshot-days=".length()));
+            } else {
+                sketchFolder = new File(arg);
+            }
+        }
+        File dataFolder = new File(sketchFolder, "data");
+
+        long start = System.currentTimeMillis();
+        RunsCsvReader reader = new RunsCsvReader(new File(dataFolder, "runs.csv"));
+        File output = new File(dataFolder, RunsLogReader.FILE_NAME);
+        RunsLogWriter writer = convert(reader, output, snapshotDays);
+        System.out.println("Wrote " + output + " (" + writer.getEventCount() + " events, " + writer.getSnapshotCount()
+                + " snapshots, " + reader.getDayCount() + " days) in " + (System.currentTimeMillis() - start) + "ms");
+    }
+}
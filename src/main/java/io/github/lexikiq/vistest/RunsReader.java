@@ -0,0 +1,56 @@
+package io.github.lexikiq.vistest;
+
+/**
+ * Reads the run each runner has on every day of the timeline, one day at a time: either the full rows of runs.csv
+ * ({@link RunsCsvReader}) or the changes in an event log ({@link RunsLogReader}).
+ * <p>
+ * Runners are identified by their column, an index into {@link #getHeader()} (whose first entry is "date", as in
+ * runs.csv). Each day, only the columns that changed since the day before are reported, so callers never have to
+ * look at every runner on every day.
+ */
+public interface RunsReader {
+    String[] getHeader();
+
+    /**
+     * @return the number of days from the first one to the last one
+     */
+    int getDayCount();
+
+    /**
+     * Advances to the next day.
+     * @return false if there are no days left
+     */
+    boolean nextDay();
+
+    int getYear();
+
+    int getMonth();
+
+    int getDay();
+
+    /**
+     * @return the run ID the runner in the given column has on the current day, or null if they have none
+     */
+    String getCell(int column);
+
+    /**
+     * @return how many columns changed on the current day
+     */
+    int getChangeCount();
+
+    /**
+     * @return the column of one of the current day's changes, from 0 to {@link #getChangeCount()} (exclusive)
+     */
+    int getChangeColumn(int change);
+
+    /**
+     * Moves to the end of the day before {@code day}: the cells hold everyone's runs as of then, and the next call to
+     * {@link #nextDay()} reads {@code day}.
+     */
+    void seek(int day);
+
+    /**
+     * @return a reader of the same data with a position of its own (at the start), i.e. to be used by another thread
+     */
+    RunsReader copy();
+}
@@ -0,0 +1,122 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PApplet;
+
+/**
+ * A day-indexed series that has been run through {@link #average(float[], float, float)} ahead of time.
+ * <p>
+ * The average is sampled {@code resolution} times per day and lookups linearly interpolate between samples, so
+ * finding the smoothed value for a frame is O(1) and doesn't allocate. Only the stretch of days where the input
+ * differs from {@code baseline} (padded by the averaging window) is stored; anything outside of it is the baseline.
+ */
+public class SmoothedCurve {
+    private final int resolution; // samples per day
+    private final int firstSample; // sample index of samples[0]
+    private final float[] samples;
+    private final float before; // value used for samples before the stored range
+    private final float after; // value used for samples after the stored range
+
+    public SmoothedCurve(float[] values, float averagingWindow, int resolution, float baseline) {
+        this(values, 0, values.length, averagingWindow, resolution, baseline);
+    }
+
+    /**
+     * Smooths a segment of a longer series, where {@code values[0]} is day {@code dayOffset} and every other day
+     * before {@code dataLength} is the baseline.
+     */
+    public SmoothedCurve(float[] values, int dayOffset, int dataLength, float averagingWindow, int resolution, float baseline) {
+        this.resolution = resolution;
+
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != baseline) {
+                if (first == -1) first = i + dayOffset;
+                last = i + dayOffset;
+            }
+        }
+
+        if (first == -1) {
+            firstSample = 0;
+            samples = new float[0];
+            before = baseline;
+            after = baseline;
+            return;
+        }
+
+        // outside of this range the averaging window only ever sees the baseline
+        float startDay = Math.max(0, first - averagingWindow);
+        float endDay = Math.min(dataLength, last + averagingWindow);
+        firstSample = (int) Math.ceil(startDay * resolution);
+        int lastSample = (int) Math.floor(endDay * resolution);
+
+        samples = new float[lastSample - firstSample + 1];
+        for (int s = 0; s < samples.length; s++) {
+            float day = (float) (firstSample + s) / resolution;
+            samples[s] = average(values, dayOffset, dataLength, baseline, day, averagingWindow);
+        }
+
+        // the ends of the timeline are clamped rather than falling back to the baseline
+        before = startDay == 0 ? samples[0] : baseline;
+        after = endDay == dataLength ? samples[samples.length-1] : baseline;
+    }
+
+    /**
+     * Averages the days around {@code index}, weighting each one by how close it is.
+     * <p>
+     * {@code averagingWindow} generally corresponds to how snappy animations are; larger values have a larger window
+     * of averaging, making it smoother.
+     */
+    public static float average(float[] values, float index, float averagingWindow) {
+        return average(values, 0, values.length, 0, index, averagingWindow);
+    }
+
+    // reads the baseline for days outside of the segment
+    private static float average(float[] values, int dayOffset, int dataLength, float baseline, float index, float averagingWindow) {
+        int startIndex = PApplet.max(0, PApplet.ceil(index-averagingWindow));
+        int endIndex = PApplet.min(dataLength-1, PApplet.floor(index+averagingWindow));
+        float sum = 0;
+        float count = 0;
+        for (int i = startIndex; i <= endIndex; i++){
+            int segmentIndex = i - dayOffset;
+            float val = segmentIndex >= 0 && segmentIndex < values.length ? values[segmentIndex] : baseline;
+            float weight = 0.5f + 0.5f*PApplet.cos((i-index)/averagingWindow * PApplet.PI);
+            count += weight;
+            sum += val*weight;
+        }
+        return sum/count;
+    }
+
+    public float get(float day) {
+        float pos = day * resolution - firstSample;
+        int index = (int) Math.floor(pos);
+        float rem = pos - index;
+        float sampleBefore = sampleAt(index);
+        float sampleAfter = sampleAt(index+1);
+        return sampleBefore + (sampleAfter - sampleBefore) * rem;
+    }
+
+    private float sampleAt(int index) {
+        if (index < 0) return before;
+        if (index >= samples.length) return after;
+        return samples[index];
+    }
+
+    /**
+     * @return the day after which this curve may differ from its baseline
+     */
+    public float getStartDay() {
+        return (float) (firstSample - 1) / resolution;
+    }
+
+    /**
+     * @return the day before which this curve may differ from its baseline
+     */
+    public float getEndDay() {
+        return (float) (firstSample + samples.length) / resolution;
+    }
+
+    public boolean isEmpty() {
+        return samples.length == 0;
+    }
+}
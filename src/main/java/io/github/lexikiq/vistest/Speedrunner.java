@@ -1,52 +1,48 @@
 package io.github.lexikiq.vistest;
 
-import processing.core.PImage;
 import processing.data.JSONArray;
 import processing.data.JSONObject;
 
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 
-public class Speedrunner implements Comparable<Speedrunner> {
+public class Speedrunner {
     protected static final String COLOR_TYPE_NAME = "dark"; // can be "light"
+    private final int id; // index into VisApplet.runnerArray and the TimelineStore
     private final String uuid;
     private final JSONArray playerInfo;
-    public final float[] values;
-    public final String[] displayValues;
-    public final int[] ranks;
     private final String displayName;
     private final Color clr;
-    public final List<String> runs = new ArrayList<String>();
-    public final int[] runIndex;
-    private final PImage pImage;
-    private int sortValue = -1;
-    private PImage flag;
-    public Speedrunner(String runnerID, JSONArray playerInfo, int dataLength, PImage pImage, Map<String, PImage> flags) {
+    public final List<Run> runs = new ArrayList<Run>();
+    public final List<String> runDisplayValues = new ArrayList<String>(); // display time of each run in runs
+    private final String flagCode;
+    private SmoothedCurve rankCurve;
+    public Speedrunner(int id, String runnerID, JSONArray playerInfo) {
+        this.id = id;
         uuid = runnerID;
         this.playerInfo = playerInfo;
-        this.pImage = pImage;
-
-        values = new float[dataLength];
-        ranks = new int[dataLength];
-        displayValues = new String[dataLength];
-        runIndex = new int[dataLength];
-        for (int i = 0; i < dataLength; i++) {
-            values[i] = 0;
-            ranks[i] = VisApplet.DISPLAY_RANKS+1;
-            displayValues[i] = "";
-            runIndex[i] = -1;
-        }
 
         displayName = initDisplayName();
         clr = initColor();
-        flag = initFlag(flags);
+        flagCode = initFlagCode();
+    }
+
+    /**
+     * Creates a speedrunner whose player info has already been resolved (i.e. from a {@link TimelineFile}).
+     */
+    public Speedrunner(int id, String runnerID, String displayName, Color clr, String flagCode) {
+        this.id = id;
+        uuid = runnerID;
+        this.playerInfo = null;
+        this.displayName = displayName;
+        this.clr = clr;
+        this.flagCode = flagCode;
     }
 
-    private PImage initFlag(Map<String, PImage> flags) {
+    private String initFlagCode() {
         String flagCode = null;
         for (int i = 0; i < playerInfo.size(); i++) {
             JSONObject playerObject = playerInfo.getJSONObject(i);
@@ -55,23 +51,27 @@ public class Speedrunner implements Comparable<Speedrunner> {
             if (flagCode != null && !playerCode.equals(flagCode)) return null;
             flagCode = playerCode;
         }
-        return flags.getOrDefault(flagCode, null);
+        return flagCode;
     }
 
-    public PImage getFlag() {
-        return flag;
+    /**
+     * @return the country code shared by all players of this runner, or null if there isn't one
+     */
+    public String getFlagCode() {
+        return flagCode;
     }
 
-    public void setFlag(PImage flag) {
-        this.flag = flag;
+    public void initRankCurve(TimelineStore timeline, float averagingWindow, int resolution) {
+        rankCurve = new SmoothedCurve(timeline.getRankSegment(id), Math.max(0, timeline.getFirstDay(id)),
+                timeline.getDataLength(), averagingWindow, resolution, TimelineStore.NO_RANK);
     }
 
-    public Float getValueForSort() {
-        return values[getSortValue()];
+    public float getSmoothedRank(float day) {
+        return rankCurve.get(day);
     }
 
-    public int compareTo(Speedrunner s) {
-        return getValueForSort().compareTo(s.getValueForSort());
+    public SmoothedCurve getRankCurve() {
+        return rankCurve;
     }
 
     private String initDisplayName() {
@@ -111,14 +111,19 @@ public class Speedrunner implements Comparable<Speedrunner> {
         return out.toString();
     }
 
+    private static boolean hasUserColor(JSONArray playerInfo) {
+        return playerInfo.size() == 1 && playerInfo.getJSONObject(0).hasKey("name-style");
+    }
+
     private Color initColor() {
-        if (playerInfo.size() == 1 && playerInfo.getJSONObject(0).hasKey("name-style")) {
+        if (hasUserColor(playerInfo)) {
             Color userColor = getUserColor();
             float[] hsb = Color.RGBtoHSB(userColor.getRed(), userColor.getGreen(), userColor.getBlue(), null);
             hsb[1] = Math.max(hsb[1], 0.2f); // stops gray colors (i.e. pure white)
             return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
         } else {
-            Random rand = VisApplet.rand;
+            // seeded by the uuid so runners keep their color no matter which (or how many) others are loaded
+            Random rand = new Random(VisApplet.COLOR_SEED ^ uuid.hashCode());
             float s = 0.6f + rand.nextFloat()*.2f;
             float b = 0.5f + rand.nextFloat()*.2f;
             return Color.getHSBColor(rand.nextFloat(), s, b);
@@ -139,6 +144,10 @@ public class Speedrunner implements Comparable<Speedrunner> {
 
     public static int avg(int i1, int i2) {return (i1+i2)/2;}
 
+    public int getId() {
+        return this.id;
+    }
+
     public String getUuid() {
         return this.uuid;
     }
@@ -154,16 +163,4 @@ public class Speedrunner implements Comparable<Speedrunner> {
     public Color getClr() {
         return this.clr;
     }
-
-    public PImage getpImage() {
-        return this.pImage;
-    }
-
-    public int getSortValue() {
-        return this.sortValue;
-    }
-
-    public void setSortValue(int sortValue) {
-        this.sortValue = sortValue;
-    }
 }
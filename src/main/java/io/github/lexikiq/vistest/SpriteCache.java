@@ -0,0 +1,109 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rendered images of the parts of a bar that look the same on every frame, so they can be copied onto the
+ * screen instead of being re-scaled and re-drawn each time.
+ * <p>
+ * A runner's sprite holds their profile picture (already scaled to fit the bar) and their name; flags come
+ * pre-scaled from the {@link FlagAtlas} instead, since they're tinted differently on every frame. Only the most
+ * recently drawn {@code capacity} sprites are kept. A cache draws with its sketch's font, so it must
+ * only be used by that sketch's drawing thread.
+ */
+public class SpriteCache {
+    public static final int PADDING = 16; // room around the bar for parts of letters that stick out of it, at the base resolution
+
+    private final VisApplet applet;
+    private final Map<Speedrunner, Sprite> sprites;
+
+    public SpriteCache(VisApplet applet, int capacity) {
+        this.applet = applet;
+        sprites = new LinkedHashMap<Speedrunner, Sprite>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Speedrunner, Sprite> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public static class Sprite {
+        public final PImage image;
+        public final int nameX; // where the name starts, relative to the left of the sprite
+        public final int nameWidth; // the name's width (as drawBars rounds it)
+        private final PImage avatar; // the profile picture this was drawn with
+
+        private Sprite(PImage image, int nameX, int nameWidth, PImage avatar) {
+            this.image = image;
+            this.nameX = nameX;
+            this.nameWidth = nameWidth;
+            this.avatar = avatar;
+        }
+    }
+
+    /**
+     * @return how far above the bar's top sprites start, i.e. {@link #PADDING} scaled to the sketch's layout
+     */
+    public int getPadding() {
+        return applet.layout.px(PADDING);
+    }
+
+    /**
+     * @return the profile picture and name of a runner, to be drawn {@link #getPadding()} pixels above the bar's
+     *         top and at its text start
+     */
+    public Sprite getRunnerSprite(Speedrunner sr) {
+        Sprite sprite = sprites.get(sr);
+        PImage avatar = applet.getAvatar(sr);
+        // redraw once the profile picture has loaded
+        if (sprite == null || sprite.avatar != avatar) {
+            sprite = renderRunner(sr, avatar);
+            sprites.put(sr, sprite);
+        }
+        return sprite;
+    }
+
+    /**
+     * @param avatar the runner's profile picture (already scaled to fit), null if it's still loading or
+     *               {@link AvatarLoader#MISSING} if they don't have one
+     */
+    private Sprite renderRunner(Speedrunner sr, PImage avatar) {
+        // relative to the left of the bar's text and the padding above the bar
+        Layout layout = applet.layout;
+        int padding = getPadding();
+        int nameX = 0;
+        int maxDim = layout.avatarDimensions;
+        boolean hasAvatar = applet.avatars.hasAvatar(sr.getUuid()) && avatar != AvatarLoader.MISSING;
+        if (hasAvatar) nameX += maxDim + layout.px(6);
+
+        String displayName = sr.getDisplayName();
+        // measured on the sketch so the cached width is shared with the rest of drawBars (which uses this font too)
+        applet.textFont(applet.font, layout.nameFontSize);
+        int nameWidth = (int) applet.textWidth(displayName);
+
+        PGraphics pg = applet.createHeadlessGraphics(nameX + nameWidth + padding, layout.barHeight + padding*2);
+        pg.beginDraw();
+        if (hasAvatar && avatar == null) {
+            // placeholder while the picture loads
+            pg.noStroke();
+            pg.fill(255, 255, 255, 48);
+            pg.rect(0, padding+layout.imagePadding, maxDim, maxDim);
+        } else if (hasAvatar) {
+            // centered in the square it was scaled to fit
+            int wOffset = (maxDim - avatar.width) / 2;
+            int hOffset = (maxDim - avatar.height) / 2;
+            pg.image(avatar, wOffset, padding+layout.imagePadding+hOffset);
+        }
+
+        pg.textFont(applet.font, layout.nameFontSize);
+        pg.textAlign(VisApplet.LEFT);
+        pg.fill(255);
+        pg.text(displayName, nameX, padding+layout.barHeight-layout.nameTextOffset);
+        pg.endDraw();
+        return new Sprite(pg.get(), nameX, nameWidth, avatar);
+    }
+}
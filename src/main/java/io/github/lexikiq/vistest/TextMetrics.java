@@ -0,0 +1,134 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Caches text measurements, since the same names, times and categories get measured at the same sizes on every
+ * frame.
+ * <p>
+ * Widths are keyed by (string, font, size) and are exactly what {@link PGraphics#textWidth(String)} returned the
+ * first time, so cached layouts match uncached ones to the pixel. All methods are thread-safe, so one instance can
+ * be shared between parallel renderers.
+ */
+public class TextMetrics {
+    private final List<SizedFont> fonts = new CopyOnWriteArrayList<SizedFont>();
+    private final Map<String, String[]> millisSplits = new ConcurrentHashMap<String, String[]>();
+
+    private static class SizedFont {
+        private final PFont font;
+        private final float size;
+        private final Map<String, Float> widths = new ConcurrentHashMap<String, Float>();
+        private final Map<String, ShrinkTable> shrinkTables = new ConcurrentHashMap<String, ShrinkTable>(); // starting at this size
+
+        private SizedFont(PFont font, float size) {
+            this.font = font;
+            this.size = size;
+        }
+    }
+
+    private SizedFont getSizedFont(PFont font, float size) {
+        // only a handful of sizes are ever used, so a linear search beats hashing a composite key
+        for (SizedFont sizedFont : fonts) {
+            if (sizedFont.font == font && sizedFont.size == size) return sizedFont;
+        }
+        synchronized (fonts) {
+            for (SizedFont sizedFont : fonts) {
+                if (sizedFont.font == font && sizedFont.size == size) return sizedFont;
+            }
+            SizedFont sizedFont = new SizedFont(font, size);
+            fonts.add(sizedFont);
+            return sizedFont;
+        }
+    }
+
+    /**
+     * @return the width of {@code text} in the graphics' current font and text size
+     */
+    public float getWidth(PGraphics g, String text) {
+        if (g.textFont == null) return g.textWidth(text); // let Processing pick its default font
+        SizedFont sizedFont = getSizedFont(g.textFont, g.textSize);
+        Float width = sizedFont.widths.get(text);
+        if (width == null) {
+            width = g.textWidth(text);
+            sizedFont.widths.put(text, width);
+        }
+        return width;
+    }
+
+    /**
+     * Splits a time with milliseconds (i.e. "1m 23.456s") into the part before the milliseconds and the
+     * milliseconds themselves (".456s"), which are drawn at different sizes.
+     */
+    public String[] getMillisSplit(String timeText) {
+        String[] split = millisSplits.get(timeText);
+        if (split == null) {
+            int offset = timeText.length() - 5;
+            split = new String[]{timeText.substring(0, offset), timeText.substring(offset)};
+            millisSplits.put(timeText, split);
+        }
+        return split;
+    }
+
+    /**
+     * @return the widths of {@code text} as its size shrinks by 1% at a time from {@code startSize} to below
+     *         {@code minSize}, measured in the graphics' current font
+     */
+    public ShrinkTable getShrinkTable(PGraphics g, String text, float startSize, float minSize) {
+        Map<String, ShrinkTable> shrinkTables = getSizedFont(g.textFont, startSize).shrinkTables;
+        ShrinkTable table = shrinkTables.get(text);
+        if (table == null || table.minSize != minSize) {
+            table = new ShrinkTable(g, text, startSize, minSize);
+            shrinkTables.put(text, table);
+        }
+        return table;
+    }
+
+    /**
+     * The widths of a piece of text at every size that shrinking it (1% at a time) can produce.
+     */
+    public class ShrinkTable {
+        private final float minSize;
+        private final float[] sizes;
+        private final float[] widths;
+
+        private ShrinkTable(PGraphics g, String text, float startSize, float minSize) {
+            this.minSize = minSize;
+            int count = 1;
+            for (float size = startSize; size >= minSize; size *= (99f/100f)) count++;
+            sizes = new float[count];
+            widths = new float[count];
+
+            float previousSize = g.textSize;
+            float size = startSize;
+            for (int i = 0; i < count; i++) {
+                g.textSize(size);
+                sizes[i] = size;
+                widths[i] = TextMetrics.this.getWidth(g, text);
+                size *= (99f/100f);
+            }
+            g.textSize(previousSize);
+        }
+
+        public float getWidth(int step) {
+            return widths[step];
+        }
+
+        /**
+         * Finds the size that text centered at {@code centerX} shrinks to so its right edge doesn't pass
+         * {@code maxX}. Gives up (returning 0) once the text is too small, or if it's centered past {@code maxX}.
+         */
+        public float fit(int centerX, int maxX) {
+            for (int i = 0; i < sizes.length; i++) {
+                if ((centerX + (widths[i]/2)) <= maxX) return sizes[i];
+                if ((centerX - (widths[i]/2)) >= maxX || i == sizes.length-1) return 0f;
+            }
+            return 0f;
+        }
+    }
+}
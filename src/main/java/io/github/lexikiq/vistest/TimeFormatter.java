@@ -0,0 +1,127 @@
+package io.github.lexikiq.vistest;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats run times and dates by writing the characters straight into a reusable buffer, instead of going through
+ * {@link String#format(String, Object...)} and {@link java.text.SimpleDateFormat}.
+ * <p>
+ * The output is exactly what {@code "%dh %02dm %06.3fs"}-style patterns and {@code "MMM d, yyyy"} give in the default
+ * locale and time zone, down to localized digits and decimal separators. Formatters aren't thread-safe, but
+ * {@link #forThread()} hands every thread its own, so the static helpers in {@link VisApplet} can be called from
+ * parallel renderers and preprocessing alike.
+ */
+public class TimeFormatter {
+    private static final ThreadLocal<TimeFormatter> formatters = ThreadLocal.withInitial(TimeFormatter::new);
+
+    private final char[] buffer = new char[64];
+    private int length;
+    private final Calendar calendar;
+    private final String[] shortMonths;
+    private final char zeroDigit;
+    private final char decimalSeparator;
+
+    public TimeFormatter() {
+        this(Locale.getDefault(Locale.Category.FORMAT), TimeZone.getDefault());
+    }
+
+    public TimeFormatter(Locale locale, TimeZone timeZone) {
+        calendar = Calendar.getInstance(timeZone, locale);
+        shortMonths = DateFormatSymbols.getInstance(locale).getShortMonths();
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        zeroDigit = symbols.getZeroDigit();
+        decimalSeparator = symbols.getDecimalSeparator();
+    }
+
+    /**
+     * @return this thread's formatter
+     */
+    public static TimeFormatter forThread() {
+        return formatters.get();
+    }
+
+    /**
+     * @see VisApplet#displayTime(float, boolean, boolean, boolean)
+     */
+    public String formatDuration(float seconds, boolean useMilliseconds, boolean useSeconds, boolean useHours) {
+        length = 0;
+        int h = (int) ((seconds/60)/60);
+        int m = (int) ((seconds/60) % 60);
+        float s = seconds % 60;
+        if (useHours && h != 0) {
+            appendInt(h, 1);
+            append("h ");
+            appendInt(m, 2);
+        } else {
+            appendInt(m, 1);
+        }
+        append("m ");
+        if (useSeconds) {
+            if (useMilliseconds && (s % 1.0f) > 0f) {
+                appendMillis(s);
+            } else {
+                appendInt((int) Math.floor(s), 2);
+            }
+            append('s');
+        }
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * @return the date like "Jan 1, 2020"
+     */
+    public String formatDate(Date date) {
+        length = 0;
+        calendar.setTime(date);
+        append(shortMonths[calendar.get(Calendar.MONTH)]);
+        append(' ');
+        appendInt(calendar.get(Calendar.DAY_OF_MONTH), 1);
+        append(", ");
+        appendInt(calendar.get(Calendar.YEAR), 4);
+        return new String(buffer, 0, length);
+    }
+
+    private void append(char c) {
+        buffer[length++] = c;
+    }
+
+    private void append(String text) {
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+    }
+
+    /**
+     * Appends {@code value} zero-padded to at least {@code width} characters (counting the sign), like {@code %0<width>d}.
+     */
+    private void appendInt(long value, int width) {
+        if (value < 0) {
+            append('-');
+            width--;
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) digits++;
+        for (int i = digits; i < width; i++) append(zeroDigit);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) (zeroDigit + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Appends a positive number of seconds like {@code %06.3f}, which rounds half up.
+     */
+    private void appendMillis(float seconds) {
+        // a float times 1000 (and plus a half) is exact as a double, so this rounds the same as the decimal expansion
+        long millis = (long) Math.floor(seconds * 1000.0 + 0.5);
+        appendInt(millis / 1000, 2);
+        append(decimalSeparator);
+        appendInt(millis % 1000, 3);
+    }
+}
@@ -0,0 +1,241 @@
+package io.github.lexikiq.vistest;
+
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the pre-processed binary timeline (timeline.bin), which holds everything
+ * {@link VisApplet#loadData()} would otherwise build from metadata.json and runs.csv.
+ * <p>
+ * Layout (big-endian), after the magic number and version:
+ * <ol>
+ *     <li>string table: every string below is stored once and referred to by index (-1 for null)</li>
+ *     <li>game, category, milliseconds/multi-category/cover flags</li>
+ *     <li>per-day dates (epoch days), axis maxes and record holder streaks</li>
+ *     <li>run table: ID, time, comment, category, region, platform, emulated</li>
+ *     <li>runner table: uuid, display name, color, flag code, profile picture flag, runs and their display times</li>
+ *     <li>the {@link TimelineStore} columns</li>
+ * </ol>
+ * Run this class from the sketch folder to convert its data folder; the sketch loads the binary file instead of
+ * the JSON and CSV from then on.
+ */
+public class TimelineFile {
+    public static final String FILE_NAME = "timeline.bin";
+    public static final int MAGIC = 0x5352544C; // "SRTL"
+    // bump this whenever the layout or how its contents are computed changes (i.e. runner colors or which runners
+    // are kept), so files written by older versions are rebuilt instead of being loaded
+    public static final int VERSION = 2;
+
+    public static void write(VisApplet applet, File file) throws IOException {
+        // gather all strings first so the table can be written up front
+        StringTable strings = new StringTable();
+        strings.add(applet.gameName);
+        strings.add(applet.categoryName);
+        for (Run run : applet.runTable) {
+            strings.add(run.getId());
+            strings.add(run.getComment());
+            strings.add(run.getCategory());
+            strings.add(run.getRegion());
+            strings.add(run.getPlatform());
+        }
+        for (Speedrunner sr : applet.runnerArray) {
+            strings.add(sr.getUuid());
+            strings.add(sr.getDisplayName());
+            strings.add(sr.getFlagCode());
+            for (String displayValue : sr.runDisplayValues) {
+                strings.add(displayValue);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(strings.values.size());
+            for (String value : strings.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(strings.get(applet.gameName));
+            out.writeInt(strings.get(applet.categoryName));
+            out.writeBoolean(applet.useMilliseconds);
+            out.writeBoolean(applet.useMultiMode);
+            out.writeBoolean(applet.hasCover);
+
+            out.writeInt(applet.DATA_LENGTH);
+            for (Date date : applet.dates) {
+                out.writeInt((int) date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay());
+            }
+            for (double max : applet.maxes) out.writeDouble(max);
+            for (int days : applet.recordHolderDays) out.writeInt(days);
+
+            out.writeInt(applet.runTable.length);
+            for (Run run : applet.runTable) {
+                out.writeInt(strings.get(run.getId()));
+                out.writeFloat(run.getTime());
+                out.writeInt(strings.get(run.getComment()));
+                out.writeInt(strings.get(run.getCategory()));
+                out.writeInt(strings.get(run.getRegion()));
+                out.writeInt(strings.get(run.getPlatform()));
+                out.writeBoolean(run.isEmulated());
+            }
+
+            out.writeInt(applet.runnerArray.length);
+            for (Speedrunner sr : applet.runnerArray) {
+                out.writeInt(strings.get(sr.getUuid()));
+                out.writeInt(strings.get(sr.getDisplayName()));
+                out.writeInt(sr.getClr().getRGB());
+                out.writeInt(strings.get(sr.getFlagCode()));
+                out.writeBoolean(applet.pfps.contains(sr.getUuid()));
+                out.writeInt(sr.runs.size());
+                for (int r = 0; r < sr.runs.size(); r++) {
+                    out.writeInt(sr.runs.get(r).getIndex());
+                    out.writeInt(strings.get(sr.runDisplayValues.get(r)));
+                }
+            }
+
+            applet.timeline.write(out);
+        }
+    }
+
+    /**
+     * @return whether the file is a timeline file written by this version, so {@link #read(VisApplet, File)} can load it
+     */
+    public static boolean isCurrentVersion(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void read(VisApplet applet, File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC) throw new IOException(file + " is not a timeline file");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException(file + " has version " + version + ", expected " + VERSION);
+
+        String[] strings = new String[buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (bytes.length < length) bytes = new byte[Math.max(length, bytes.length*2)];
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        applet.gameName = getString(strings, buffer.getInt());
+        applet.categoryName = getString(strings, buffer.getInt());
+        applet.useMilliseconds = buffer.get() != 0;
+        applet.useMultiMode = buffer.get() != 0;
+        applet.hasCover = buffer.get() != 0;
+
+        int dataLength = buffer.getInt();
+        applet.DATA_LENGTH = dataLength;
+        applet.dates = new Date[dataLength];
+        applet.maxes = new double[dataLength];
+        applet.unitChoices = new double[dataLength];
+        applet.recordHolderDays = new int[dataLength];
+        for (int d = 0; d < dataLength; d++) {
+            LocalDate localDate = LocalDate.ofEpochDay(buffer.getInt());
+            applet.dates[d] = Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+        buffer.asDoubleBuffer().get(applet.maxes);
+        buffer.position(buffer.position() + dataLength*8);
+        buffer.asIntBuffer().get(applet.recordHolderDays);
+        buffer.position(buffer.position() + dataLength*4);
+
+        Run[] runTable = new Run[buffer.getInt()];
+        applet.runTable = runTable;
+        for (int r = 0; r < runTable.length; r++) {
+            String id = getString(strings, buffer.getInt());
+            float time = buffer.getFloat();
+            String comment = getString(strings, buffer.getInt());
+            String category = getString(strings, buffer.getInt());
+            String region = getString(strings, buffer.getInt());
+            String platform = getString(strings, buffer.getInt());
+            boolean emulated = buffer.get() != 0;
+            runTable[r] = new Run(r, id, time, comment, category, region, platform, emulated);
+            applet.runs.put(id, runTable[r]);
+        }
+
+        applet.runnerArray = new Speedrunner[buffer.getInt()];
+        for (int c = 0; c < applet.runnerArray.length; c++) {
+            String uuid = getString(strings, buffer.getInt());
+            String displayName = getString(strings, buffer.getInt());
+            Color clr = new Color(buffer.getInt());
+            String flagCode = getString(strings, buffer.getInt());
+            if (buffer.get() != 0) applet.pfps.add(uuid);
+
+            Speedrunner speedrunner = new Speedrunner(c, uuid, displayName, clr, flagCode);
+            int runCount = buffer.getInt();
+            for (int r = 0; r < runCount; r++) {
+                speedrunner.runs.add(runTable[buffer.getInt()]);
+                speedrunner.runDisplayValues.add(getString(strings, buffer.getInt()));
+            }
+            applet.speedrunners.put(uuid, speedrunner);
+            applet.runnerArray[c] = speedrunner;
+        }
+
+        applet.timeline = TimelineStore.read(buffer);
+    }
+
+    private static String getString(String[] strings, int index) {
+        return index == -1 ? null : strings[index];
+    }
+
+    private static class StringTable {
+        private final List<String> values = new ArrayList<String>();
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        private void add(String value) {
+            if (value == null || indexes.containsKey(value)) return;
+            indexes.put(value, values.size());
+            values.add(value);
+        }
+
+        private int get(String value) {
+            return value == null ? -1 : indexes.get(value);
+        }
+    }
+
+    /**
+     * Converts data/metadata.json and data/runs.csv into data/timeline.bin.
+     * @param args optionally, the sketch folder to convert (defaults to the working directory)
+     */
+    public static void main(String[] args) throws IOException {
+        File sketchFolder = new File(args.length > 0 ? args[0] : ".");
+        VisApplet applet = new VisApplet();
+        applet.dataFolder = new File(sketchFolder, "data");
+
+        long start = System.currentTimeMillis();
+        applet.loadData();
+        File output = new File(applet.dataFolder, FILE_NAME);
+        write(applet, output);
+        System.out.println("Wrote " + output + " (" + applet.runnerArray.length + " runners, " + applet.DATA_LENGTH
+                + " days) in " + (System.currentTimeMillis() - start) + "ms");
+    }
+}
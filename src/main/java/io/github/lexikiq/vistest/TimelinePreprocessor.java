@@ -0,0 +1,344 @@
+package io.github.lexikiq.vistest;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds the timeline of a sketch out of runs.csv (or its event log), ranking the days on several threads.
+ * <p>
+ * Each day's ranking only depends on that day's runs, so after reading the changes (which has to happen in order)
+ * the days are split into chunks that are ranked on their own, each starting from the runs everyone had at the start
+ * of the chunk (which the chunk's own copy of the reader seeks to). The axis maxes and record holder streaks do carry over from day to day, so every chunk
+ * first works them out as if it were the start of the timeline, and then each chunk is corrected in order with the
+ * real values from the chunk before it. The correction stops as soon as a day comes out the same as the guess (from
+ * there on the rest of the chunk must match too), which is usually within a few days. Everything comes out exactly
+ * as if it were done one day at a time, no matter how many threads are used.
+ */
+public class TimelinePreprocessor {
+    public static final int MIN_CHUNK_DAYS = 64; // ranking a chunk starts by ranking everyone from scratch
+    public static final int CHUNKS_PER_THREAD = 4; // so threads that finish early can pick up more work
+
+    private final VisApplet applet;
+    private final int threads;
+
+    // filled in while reading the file: the runs that changed on each day, by column
+    private int[] dayChanges; // index of each day's first change, plus the total at the end
+    private int[] changeColumns = new int[1024];
+    private int[] changeRuns = new int[1024]; // index into the runner's runs, or NO_RUN if the cell became empty
+    private float[] changeTimes = new float[1024];
+    private int changeCount = 0;
+
+    private int chunkDays;
+
+    // ranked days only: the value of the last displayed rank and the runner in first place
+    private boolean[] ranked;
+    private float[] lastRankValues;
+    private int[] leaders;
+    private int[] holders; // the record holder after each day (id in runnerArray), or -1
+
+    public TimelinePreprocessor(VisApplet applet, int threads) {
+        this.applet = applet;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Fills in the dates, maxes, record holder streaks, runs and {@link TimelineStore} of the sketch.
+     */
+    public void process(RunsReader reader) {
+        int dataLength = applet.DATA_LENGTH;
+        String[] header = reader.getHeader();
+        int[] columnRunners = new int[header.length];
+        for (int c = 1; c < header.length; c++) {
+            // runners who never make it on screen aren't loaded (see findRankedRunners), and can't change anyone's rank
+            Speedrunner speedrunner = applet.speedrunners.get(header[c]);
+            columnRunners[c] = speedrunner == null ? -1 : speedrunner.getId();
+        }
+
+        chunkDays = Math.max(MIN_CHUNK_DAYS, (dataLength + threads*CHUNKS_PER_THREAD - 1) / (threads*CHUNKS_PER_THREAD));
+        int chunkCount = (dataLength + chunkDays - 1) / chunkDays;
+        TimelineStore.Builder builder = new TimelineStore.Builder(applet.runnerArray.length, dataLength);
+        read(reader, columnRunners, builder);
+
+        applet.maxes = new double[dataLength];
+        applet.recordHolderDays = new int[dataLength];
+        ranked = new boolean[dataLength];
+        lastRankValues = new float[dataLength];
+        leaders = new int[dataLength];
+        holders = new int[dataLength];
+        forEach(threads, chunkCount, chunk -> rankChunk(chunk, reader.copy(), columnRunners, builder));
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            carryOver(chunk * chunkDays, Math.min(dataLength, (chunk+1) * chunkDays));
+        }
+
+        if (dataLength > 0 && holders[dataLength-1] != -1) applet.recordHolder = applet.runnerArray[holders[dataLength-1]];
+        applet.timeline = builder.build();
+    }
+
+    /**
+     * Reads every day's changes, recording the days each column's run changes on and the runs each runner ever had.
+     */
+    private void read(RunsReader reader, int[] columnRunners, TimelineStore.Builder builder) {
+        int columns = columnRunners.length;
+        int[] firstDays = new int[columns];
+        int[] lastDays = new int[columns]; // -1 while the runner still has a run
+        Arrays.fill(firstDays, -1);
+        dayChanges = new int[applet.DATA_LENGTH+1];
+
+        for (int d = 0; reader.nextDay(); d++) {
+            LocalDate localDate = LocalDate.of(reader.getYear(), reader.getMonth(), reader.getDay());
+            applet.dates[d] = Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+            dayChanges[d] = changeCount;
+            for (int i = 0; i < reader.getChangeCount(); i++) {
+                int c = reader.getChangeColumn(i);
+                if (columnRunners[c] == -1) continue;
+                String runID = reader.getCell(c);
+                if (runID == null) {
+                    lastDays[c] = d-1;
+                    addChange(c, TimelineStore.NO_RUN, 0);
+                    continue;
+                }
+
+                Run run = applet.runs.get(runID);
+                int runIndex = getRunIndex(applet.runnerArray[columnRunners[c]], run, true);
+                addChange(c, runIndex, run.getTime());
+                if (firstDays[c] == -1) firstDays[c] = d;
+                lastDays[c] = -1;
+            }
+        }
+        dayChanges[applet.DATA_LENGTH] = changeCount;
+
+        for (int c = 1; c < columns; c++) {
+            if (firstDays[c] == -1) continue;
+            builder.reserve(columnRunners[c], firstDays[c], lastDays[c] == -1 ? applet.DATA_LENGTH-1 : lastDays[c]);
+        }
+    }
+
+    /**
+     * @param add whether to add the run to the runner's runs if they don't have it yet (otherwise -1 is returned)
+     * @return the index of the run in the runner's runs
+     */
+    private int getRunIndex(Speedrunner speedrunner, Run run, boolean add) {
+        int runIndex = speedrunner.runs.indexOf(run);
+        if (runIndex == -1 && add) {
+            runIndex = speedrunner.runs.size();
+            speedrunner.runs.add(run);
+            speedrunner.runDisplayValues.add(VisApplet.displayTime(run.getTime(), applet.useMilliseconds, true, true));
+        }
+        return runIndex;
+    }
+
+    private void addChange(int column, int run, float time) {
+        if (changeCount == changeColumns.length) {
+            changeColumns = Arrays.copyOf(changeColumns, changeCount*2);
+            changeRuns = Arrays.copyOf(changeRuns, changeCount*2);
+            changeTimes = Arrays.copyOf(changeTimes, changeCount*2);
+        }
+        changeColumns[changeCount] = column;
+        changeRuns[changeCount] = run;
+        changeTimes[changeCount] = time;
+        changeCount++;
+    }
+
+    /**
+     * Ranks every day of a chunk, guessing that the maxes and streaks start from scratch.
+     */
+    private void rankChunk(int chunk, RunsReader reader, int[] columnRunners, TimelineStore.Builder builder) {
+        int start = chunk * chunkDays;
+        int end = Math.min(applet.DATA_LENGTH, start + chunkDays);
+        int[] runs = new int[columnRunners.length];
+        float[] times = new float[columnRunners.length];
+        Arrays.fill(runs, TimelineStore.NO_RUN);
+        // the loaded columns that currently have a run, so a day doesn't visit every column in the file
+        int[] active = new int[columnRunners.length];
+        int[] activeSlots = new int[columnRunners.length]; // index of each column in active, or -1
+        int activeCount = 0;
+        Arrays.fill(activeSlots, -1);
+
+        // everyone's runs as of the day before the chunk (read() already added them to the runners)
+        RankingIndex ranking = new RankingIndex(columnRunners.length);
+        reader.seek(start);
+        for (int c = 1; c < runs.length; c++) {
+            String runID = reader.getCell(c);
+            if (columnRunners[c] == -1 || runID == null) continue;
+            Run run = applet.runs.get(runID);
+            runs[c] = getRunIndex(applet.runnerArray[columnRunners[c]], run, false);
+            times[c] = run.getTime();
+            ranking.set(c, times[c]-VisApplet.MIN_VALUE);
+            activeSlots[c] = activeCount;
+            active[activeCount++] = c;
+        }
+
+        for (int d = start; d < end; d++) {
+            // changes are only recorded for loaded columns
+            for (int i = dayChanges[d]; i < dayChanges[d+1]; i++) {
+                int c = changeColumns[i];
+                runs[c] = changeRuns[i];
+                times[c] = changeTimes[i];
+                if (runs[c] == TimelineStore.NO_RUN) {
+                    ranking.remove(c);
+                    int slot = activeSlots[c];
+                    if (slot != -1) {
+                        // move the last column into the gap
+                        int last = active[--activeCount];
+                        active[slot] = last;
+                        activeSlots[last] = slot;
+                        activeSlots[c] = -1;
+                    }
+                } else {
+                    ranking.set(c, times[c]-VisApplet.MIN_VALUE);
+                    if (activeSlots[c] == -1) {
+                        activeSlots[c] = activeCount;
+                        active[activeCount++] = c;
+                    }
+                }
+            }
+            for (int a = 0; a < activeCount; a++) {
+                int c = active[a];
+                builder.setValue(columnRunners[c], d, times[c]-VisApplet.MIN_VALUE, runs[c]);
+            }
+
+            int rankCount = Math.min(ranking.size(), VisApplet.DISPLAY_RANKS);
+            for (int r = 0; r < rankCount; r++) {
+                builder.setRank(columnRunners[ranking.getColumn(r)], d, r);
+            }
+            if (rankCount > 0) {
+                ranked[d] = true;
+                lastRankValues[d] = ranking.getValue(rankCount-1);
+                leaders[d] = columnRunners[ranking.getColumn(0)];
+            }
+        }
+
+        // nothing before the chunk is known yet; carryOver fixes the start up later
+        double previousMax = -1;
+        int previousDays = 0;
+        int previousHolder = -1;
+        for (int d = start; d < end; d++) {
+            previousMax = applet.maxes[d] = nextMax(d, previousMax);
+            previousDays = applet.recordHolderDays[d] = nextHolderDays(d, previousDays, previousHolder);
+            previousHolder = holders[d] = nextHolder(d, previousHolder);
+        }
+    }
+
+    /**
+     * Replaces a chunk's guessed maxes and streaks with the ones that follow from the chunk before it.
+     */
+    private void carryOver(int start, int end) {
+        double[] maxes = applet.maxes;
+        int[] recordHolderDays = applet.recordHolderDays;
+        boolean maxesDone = false;
+        boolean holdersDone = false;
+        for (int d = start; d < end && !(maxesDone && holdersDone); d++) {
+            if (!maxesDone) {
+                double max = nextMax(d, maxes[d-1]);
+                // each day only depends on the one before it, so the guess is right from the first day it agrees
+                maxesDone = Double.doubleToRawLongBits(max) == Double.doubleToRawLongBits(maxes[d]);
+                maxes[d] = max;
+            }
+            if (!holdersDone) {
+                int days = nextHolderDays(d, recordHolderDays[d-1], holders[d-1]);
+                int holder = nextHolder(d, holders[d-1]);
+                holdersDone = days == recordHolderDays[d] && holder == holders[d];
+                recordHolderDays[d] = days;
+                holders[d] = holder;
+            }
+        }
+    }
+
+    /**
+     * @return the axis max of a day, which never goes above the previous day's (-1 if there is none)
+     */
+    private double nextMax(int day, double previousMax) {
+        if (!ranked[day]) return 0;
+        double max = lastRankValues[day];
+        return previousMax != -1 ? Math.min(max, previousMax) : max;
+    }
+
+    private int nextHolderDays(int day, int previousDays, int previousHolder) {
+        if (!ranked[day] || leaders[day] != previousHolder) return 0;
+        return previousDays+1;
+    }
+
+    private int nextHolder(int day, int previousHolder) {
+        return ranked[day] ? leaders[day] : previousHolder;
+    }
+
+    /**
+     * Finds the runners who are ever in the top {@code ranks} of runs.csv. Nobody else ever gets a bar, and leaving
+     * them out doesn't change who is in the top ranks on any day, so they don't need to be loaded at all.
+     *
+     * @return the runners' uuids
+     */
+    public static Set<String> findRankedRunners(RunsReader reader, Map<String, Run> runs, int ranks) {
+        String[] header = reader.getHeader();
+        boolean[] ranked = new boolean[header.length];
+        RankingIndex ranking = new RankingIndex(header.length);
+        while (reader.nextDay()) {
+            for (int i = 0; i < reader.getChangeCount(); i++) {
+                int c = reader.getChangeColumn(i);
+                String runID = reader.getCell(c);
+                if (runID == null) {
+                    ranking.remove(c);
+                } else {
+                    ranking.set(c, runs.get(runID).getTime()-VisApplet.MIN_VALUE);
+                }
+            }
+            for (int r = 0; r < ranking.size() && r < ranks; r++) {
+                ranked[ranking.getColumn(r)] = true;
+            }
+        }
+
+        Set<String> runners = new HashSet<String>();
+        for (int c = 1; c < header.length; c++) {
+            if (ranked[c]) runners.add(header[c]);
+        }
+        return runners;
+    }
+
+    /**
+     * Calls {@code task} with every number from 0 to {@code count} (exclusive), on up to {@code threads} threads.
+     * Each thread gets a contiguous range of numbers.
+     */
+    public static void forEach(int threads, int count, IntConsumer task) {
+        int tasks = Math.min(count, threads*CHUNKS_PER_THREAD);
+        if (threads <= 1 || tasks <= 1) {
+            for (int i = 0; i < count; i++) task.accept(i);
+            return;
+        }
+
+        List<Callable<Void>> ranges = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < tasks; t++) {
+            int start = (int) ((long) count * t / tasks);
+            int end = (int) ((long) count * (t+1) / tasks);
+            ranges.add(() -> {
+                for (int i = start; i < end; i++) task.accept(i);
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(ranges)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while preprocessing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package io.github.lexikiq.vistest;
+
+import processing.core.PApplet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-day values, ranks and run indexes of every speedrunner, stored column by column.
+ * <p>
+ * Runners only take up space for the days between their first and last data point; each runner's segment is
+ * packed back to back in one primitive array per column. Days outside of a runner's segment read as the defaults
+ * (no time, unranked, no run).
+ */
+public class TimelineStore {
+    public static final float NO_VALUE = 0;
+    public static final byte NO_RANK = VisApplet.DISPLAY_RANKS+1;
+    public static final int NO_RUN = -1;
+
+    private final int dataLength;
+    private final int[] firstDay;
+    private final int[] dayCount;
+    private final int[] offset;
+    private final float[] values;
+    private final byte[] ranks;
+    private final int[] runIndexes;
+
+    private TimelineStore(int dataLength, int[] firstDay, int[] dayCount, int[] offset, float[] values, byte[] ranks, int[] runIndexes) {
+        this.dataLength = dataLength;
+        this.firstDay = firstDay;
+        this.dayCount = dayCount;
+        this.offset = offset;
+        this.values = values;
+        this.ranks = ranks;
+        this.runIndexes = runIndexes;
+    }
+
+    private int slot(int runner, int day) {
+        int slot = day - firstDay[runner];
+        if (slot < 0 || slot >= dayCount[runner]) return -1;
+        return offset[runner] + slot;
+    }
+
+    public float getValue(int runner, int day) {
+        int slot = slot(runner, day);
+        return slot == -1 ? NO_VALUE : values[slot];
+    }
+
+    public int getRank(int runner, int day) {
+        int slot = slot(runner, day);
+        return slot == -1 ? NO_RANK : ranks[slot];
+    }
+
+    public int getRunIndex(int runner, int day) {
+        int slot = slot(runner, day);
+        return slot == -1 ? NO_RUN : runIndexes[slot];
+    }
+
+    /**
+     * Linearly interpolates a runner's value between the two days surrounding {@code day}.
+     */
+    public float linValue(int runner, float day) {
+        int dayInt = (int) day;
+        float dayRem = day%1.0f;
+        float before = getValue(runner, dayInt);
+        float after = getValue(runner, Math.min(dayInt+1, dataLength-1));
+        return PApplet.lerp(before, after, dayRem);
+    }
+
+    /**
+     * @return the first day of the runner's segment, or -1 if they have no data
+     */
+    public int getFirstDay(int runner) {
+        return dayCount[runner] == 0 ? -1 : firstDay[runner];
+    }
+
+    /**
+     * @return the last day of the runner's segment, or -1 if they have no data
+     */
+    public int getLastDay(int runner) {
+        return dayCount[runner] == 0 ? -1 : firstDay[runner] + dayCount[runner] - 1;
+    }
+
+    /**
+     * @return a copy of the runner's ranks from {@link #getFirstDay(int)} to {@link #getLastDay(int)}
+     */
+    public float[] getRankSegment(int runner) {
+        float[] segment = new float[dayCount[runner]];
+        for (int i = 0; i < segment.length; i++) {
+            segment[i] = ranks[offset[runner] + i];
+        }
+        return segment;
+    }
+
+    public int getDataLength() {
+        return dataLength;
+    }
+
+    public int getRunnerCount() {
+        return firstDay.length;
+    }
+
+    /**
+     * Writes the packed columns in the layout expected by {@link #read(ByteBuffer)}.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(firstDay.length);
+        out.writeInt(dataLength);
+        for (int day : firstDay) out.writeInt(day);
+        for (int count : dayCount) out.writeInt(count);
+        for (float value : values) out.writeFloat(value);
+        out.write(ranks);
+        for (int runIndex : runIndexes) out.writeInt(runIndex);
+    }
+
+    /**
+     * Reads a store written by {@link #write(DataOutputStream)}, advancing the buffer past it.
+     */
+    public static TimelineStore read(ByteBuffer buffer) {
+        int runnerCount = buffer.getInt();
+        int dataLength = buffer.getInt();
+        int[] firstDay = new int[runnerCount];
+        int[] dayCount = new int[runnerCount];
+        buffer.asIntBuffer().get(firstDay);
+        buffer.position(buffer.position() + runnerCount*4);
+        buffer.asIntBuffer().get(dayCount);
+        buffer.position(buffer.position() + runnerCount*4);
+
+        int[] offset = new int[runnerCount];
+        int total = 0;
+        for (int r = 0; r < runnerCount; r++) {
+            offset[r] = total;
+            total += dayCount[r];
+        }
+
+        float[] values = new float[total];
+        byte[] ranks = new byte[total];
+        int[] runIndexes = new int[total];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + total*4);
+        buffer.get(ranks);
+        buffer.asIntBuffer().get(runIndexes);
+        buffer.position(buffer.position() + total*4);
+        return new TimelineStore(dataLength, firstDay, dayCount, offset, values, ranks, runIndexes);
+    }
+
+    /**
+     * Collects data day by day and packs it into a {@link TimelineStore}.
+     * Writes for a runner must not go back before their first written day.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int dataLength;
+        private final int[] firstDay;
+        private final int[] dayCount;
+        private final float[][] values;
+        private final byte[][] ranks;
+        private final int[][] runIndexes;
+
+        public Builder(int runnerCount, int dataLength) {
+            this.dataLength = dataLength;
+            firstDay = new int[runnerCount];
+            dayCount = new int[runnerCount];
+            values = new float[runnerCount][];
+            ranks = new byte[runnerCount][];
+            runIndexes = new int[runnerCount][];
+        }
+
+        private int slot(int runner, int day) {
+            if (dayCount[runner] == 0) {
+                firstDay[runner] = day;
+                values[runner] = new float[0];
+                ranks[runner] = new byte[0];
+                runIndexes[runner] = new int[0];
+            }
+            int slot = day - firstDay[runner];
+            if (slot < 0) throw new IllegalArgumentException("Day " + day + " is before runner " + runner + "'s first day");
+
+            if (slot >= values[runner].length) {
+                int capacity = Math.max(INITIAL_CAPACITY, values[runner].length*2);
+                capacity = Math.max(capacity, slot+1);
+                capacity = Math.min(capacity, dataLength - firstDay[runner]);
+                int oldCapacity = values[runner].length;
+                values[runner] = Arrays.copyOf(values[runner], capacity);
+                ranks[runner] = Arrays.copyOf(ranks[runner], capacity);
+                runIndexes[runner] = Arrays.copyOf(runIndexes[runner], capacity);
+                Arrays.fill(ranks[runner], oldCapacity, capacity, NO_RANK);
+                Arrays.fill(runIndexes[runner], oldCapacity, capacity, NO_RUN);
+            }
+            if (slot >= dayCount[runner]) dayCount[runner] = slot+1; // (only written while growing, see reserve)
+            return slot;
+        }
+
+        /**
+         * Allocates a runner's days from {@code firstDay} to {@code lastDay} up front. Once every runner written to
+         * has been reserved, writes for different days no longer touch any shared state, so they can come from
+         * different threads (as long as each day is written by only one of them).
+         */
+        public void reserve(int runner, int firstDay, int lastDay) {
+            slot(runner, firstDay);
+            slot(runner, lastDay);
+        }
+
+        public void setValue(int runner, int day, float value, int runIndex) {
+            int slot = slot(runner, day);
+            values[runner][slot] = value;
+            runIndexes[runner][slot] = runIndex;
+        }
+
+        public void setRank(int runner, int day, int rank) {
+            ranks[runner][slot(runner, day)] = (byte) rank;
+        }
+
+        public TimelineStore build() {
+            int runnerCount = firstDay.length;
+            int[] offset = new int[runnerCount];
+            int total = 0;
+            for (int r = 0; r < runnerCount; r++) {
+                offset[r] = total;
+                total += dayCount[r];
+            }
+
+            float[] packedValues = new float[total];
+            byte[] packedRanks = new byte[total];
+            int[] packedRunIndexes = new int[total];
+            for (int r = 0; r < runnerCount; r++) {
+                if (dayCount[r] == 0) continue;
+                System.arraycopy(values[r], 0, packedValues, offset[r], dayCount[r]);
+                System.arraycopy(ranks[r], 0, packedRanks, offset[r], dayCount[r]);
+                System.arraycopy(runIndexes[r], 0, packedRunIndexes, offset[r], dayCount[r]);
+            }
+            return new TimelineStore(dataLength, firstDay.clone(), dayCount.clone(), offset, packedValues, packedRanks, packedRunIndexes);
+        }
+    }
+}
@@ -1,15 +1,19 @@
 package io.github.lexikiq.vistest;
 
+import processing.awt.PGraphicsJava2D;
 import processing.core.PApplet;
 import processing.core.PFont;
+import processing.core.PGraphics;
 import processing.core.PImage;
+import processing.core.PSurfaceNone;
 import processing.data.JSONObject;
+import processing.event.KeyEvent;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.time.LocalDate;
-import java.time.ZoneId;
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.List;
 import java.util.*;
 
@@ -17,232 +21,356 @@ import java.util.*;
 
 public class VisApplet extends PApplet {
     public final Map<String, Speedrunner> speedrunners = new HashMap<String, Speedrunner>(); // all speedrunners
-    public final Map<String, PImage> flags = new HashMap<String, PImage>();
+    public final Map<String, Run> runs = new HashMap<String, Run>(); // all runs by ID
+    public Run[] runTable; // all runs by Run.getIndex()
+    public final Set<String> pfps = new HashSet<String>(); // runners with a profile picture
     public Speedrunner[] runnerArray;
+    public Speedrunner[][] activeRunners; // runners that may be on screen at some point during each day
+    public TimelineStore timeline;
     public int DATA_LENGTH; // how many dates/data entries there are
     public Date[] dates;
     public double[] maxes;
     public double[] unitChoices;
+    public SmoothedCurve scaleCurve; // getXScale for every frame, precomputed by initUnits
+    public SmoothedCurve unitCurve; // the smoothed unit choice for every frame
     public int[] recordHolderDays;
     public Speedrunner recordHolder = null;
     public float dateTextWidth = 0;
     public PImage coverImage = null;
-    public PImage missingFlag;
+    public FlagAtlas flagAtlas;
 //    public VideoExport videoExport;
+    public String gameName;
     public String categoryName;
+    public boolean hasCover;
     public boolean useMilliseconds;
     public boolean useMultiMode;
 
     public PFont font;
     public int frames = 0;//(int) (FRAMES_PER_DAY*365*5.7);
     public JSONObject metadata;
+    public File dataFolder;
+    public TextMetrics textMetrics = new TextMetrics();
+    public AvatarLoader avatars;
+    public boolean waitForAvatars = false; // whether frames wait for profile pictures instead of drawing placeholders
+    // threads used to build the timeline at startup, i.e. -DpreprocessThreads=1 to use just one
+    public int preprocessThreads = Integer.getInteger("preprocessThreads", Runtime.getRuntime().availableProcessors());
+    public final SpriteCache spriteCache = new SpriteCache(this, SPRITE_CACHE_SIZE); // not shared with workers
+    private final String[][] tickLabels = new String[SCALE_UNITS.length][]; // by unit, then multiple of it; not shared with workers
+    public FrameProfiler profiler = null; // only set while frames are being profiled
+    public boolean showProfiler = false;
+    public File metricsFile = null; // where to save the profiler's samples when the sketch exits
+    public String renderer = JAVA2D; // i.e. P2D to draw with OpenGL
+    public Layout layout = new Layout(S_WIDTH, S_HEIGHT, DISPLAY_RANKS); // must be set before the sketch starts
+    public BarBatch barBatch = null; // only used by the OpenGL renderers
+    public Preview preview = null; // set when playing back by the clock instead of frame by frame
+    public boolean drawAvatars = true; // lowered by the preview when frames take too long
+    public boolean drawComments = true;
+    public boolean drawLabels = true; // category and platform labels
+    private VisApplet lowResWorker = null; // draws previews at a lower resolution
+    private PImage lowResFrame = null;
 
     public static final String IMAGE_FOLDER = "pfps/";
     public static final String FLAG_FOLDER = "flags";
 
+    public static final int FRAME_RATE = 60;
     public static final float FRAMES_PER_DAY = 3f;
     public static final int RANK_SMOOTHING = 4;
+    public static final int RANK_RESOLUTION = ceil(FRAMES_PER_DAY); // smoothed rank samples per day
     public static final int MIN_VALUE = 0; // minimum speedrun time
 
-    public static final int S_WIDTH = 1920; // screen width
-    public static final int S_HEIGHT = 1080; // screen height
-    public static final int X_MIN = 80;
-    public static final int X_MAX = S_WIDTH-150;
-    public static final int Y_MIN = 200;
-    public static final int Y_MAX = S_HEIGHT-25;
-    public static final int WIDTH = X_MAX-X_MIN; // drawing width
-    public static final int HEIGHT = Y_MAX-Y_MIN; // drawing height
+    public static final int S_WIDTH = Layout.BASE_WIDTH; // default screen width
+    public static final int S_HEIGHT = Layout.BASE_HEIGHT; // default screen height
 
     public static final int DISPLAY_RANKS = 10; // how many people to display (ie top 10)
     public static final String[] PLACEMENTS = {"1st", "2nd", "3rd", "4th", "5th", "6th", "7th", "8th", "9th", "10th", "11th", "12th", "13th", "14th", "15th", "16th", "17th", "18th", "19th", "20th"};
     // public static final String TOP_RANKS_TEXT = "The fastest completions on";
 
-    public static final int TRIANGLE_SIZE = 20;
-    public static final float BAR_PROPORTION = 0.7f; // how much space the bar should fill up as a percentage
-    public static final int BAR_HEIGHT = (int) ((rankToY(1)-rankToY(0)) * BAR_PROPORTION);
-    public static final int BAR_HEIGHT_HALF = BAR_HEIGHT/2;
-    public static final int BAR_MAX_X = X_MAX-TRIANGLE_SIZE;
-
-    public static final int NAME_FONT_SIZE = 54;
-    public static final int DATE_FONT_SIZE = 96;
-    public static final int COMMENT_FONT_SIZE = 24;
-
-    public static final int PLATFORM_MARGIN = 8;
-    public static final int TITLE_TOP_MARGIN = 96;
-    public static final int TITLE_SIDE_MARGIN = 20;
-    public static final int NAME_TEXT_OFFSET = 14;
-    public static final int IMAGE_PADDING = 4;
-    public static final int FLAG_DIMENSIONS = BAR_HEIGHT-IMAGE_PADDING;
-    public static final int MULTI_PADDING = 25;
-    public static final int MULTI_MIN_PADDING = 16;
+    public static final int AVATAR_CACHE_SIZE = 256; // how many scaled profile pictures to keep
+    public static final int AVATAR_PREFETCH_DAYS = 30; // how far ahead to start loading profile pictures
+    public static final int BAR_BATCH_SIZE = 256; // how many vertices the OpenGL bar batch starts with
+    public static final int SPRITE_CACHE_SIZE = 64; // how many runner sprites to keep around
     // public static final int FLAG_STROKE_WIDTH = 2;
-    // public static final int FLAG_STROKE_DIMENSIONS = FLAG_DIMENSIONS + (FLAG_STROKE_WIDTH*2);
+    // public static final int FLAG_STROKE_DIMENSIONS = layout.flagDimensions + (FLAG_STROKE_WIDTH*2);
 
     public static final float GRAY_COLOR = 204f;
     public static final float DARK_GRAY_COLOR = 85f;
-    public static final SimpleDateFormat formatter = new SimpleDateFormat("MMM d, yyyy");
-    public static final Random rand = new Random();
+    public static final long COLOR_SEED = 1152003; // mixed with each runner's uuid to pick their random color
 
     public static final int[] SCALE_UNITS = {1, 5, 10, 15, 30, 60, 120, 180, 300, 600, 900, 1800, 3600, 7200, 10800, 18000, 36000, 86400, 172800}; // possible increments for tick marks (in seconds)
     public static final int UNITS_GOAL = 3; // how many units we'd like to fit on screen
+    public static final int X_SCALE_SMOOTHING = 14; // how many days the axis scale is averaged over
+    public static final int AXIS_RESOLUTION = RANK_RESOLUTION; // precomputed axis samples per day
     public static final int TICK_FADE_SPEED = 3; // how fast the tick marks fade (not exactly in seconds)
+    public static final char PROFILER_KEY = 'p'; // toggles the frame timing overlay
+    public static final int PROFILER_WINDOW = 600; // how many recent frames the overlay's percentiles cover
 
-    static {
-        rand.setSeed(1152003);
+    public static String dateToString(Date date) {
+        return TimeFormatter.forThread().formatDate(date);
     }
 
-    public static String dateToString(Date date) {
-        return formatter.format(date);
+    /**
+     * Prepares this sketch to be drawn offscreen without a window. Processing refuses to start sketches when
+     * there's no display, so this stands in for what {@link PApplet#runSketch(String[], PApplet)} would set up.
+     * Must be called before {@link #setup()}.
+     */
+    public void initHeadless(File sketchFolder) {
+        try {
+            // files are loaded relative to the sketch path, which Processing only sets in runSketch
+            Field sketchPathField = PApplet.class.getDeclaredField("sketchPath");
+            sketchPathField.setAccessible(true);
+            sketchPathField.set(this, sketchFolder.getAbsolutePath());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not set the sketch path", e);
+        }
+        g = createHeadlessGraphics(layout.width, layout.height);
+        surface = new PSurfaceNone(g);
+    }
+
+    public PGraphics createHeadlessGraphics(int w, int h) {
+        PGraphicsJava2D graphics = new PGraphicsJava2D();
+        graphics.setParent(this);
+        graphics.setPrimary(false);
+        graphics.setSize(w, h);
+        // the renderer would otherwise ask the (missing) screen for a compatible image
+        graphics.image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        return graphics;
+    }
+
+    /**
+     * Creates a headless copy of this sketch that shares all of its loaded data but draws into its own graphics,
+     * so frames can be rendered on several threads at once.
+     */
+    public VisApplet createWorker() {
+        return createWorker(layout);
+    }
+
+    /**
+     * Creates a headless copy of this sketch that draws at another resolution. Flags and profile pictures stay the
+     * size they were loaded at, so they're scaled on the fly.
+     */
+    public VisApplet createWorker(Layout layout) {
+        VisApplet worker = new VisApplet();
+        worker.layout = layout;
+        worker.initHeadless(new File(sketchPath()));
+        worker.speedrunners.putAll(speedrunners);
+        worker.runs.putAll(runs);
+        worker.runTable = runTable;
+        worker.pfps.addAll(pfps);
+        worker.runnerArray = runnerArray;
+        worker.activeRunners = activeRunners;
+        worker.timeline = timeline;
+        worker.DATA_LENGTH = DATA_LENGTH;
+        worker.dates = dates;
+        worker.maxes = maxes;
+        worker.unitChoices = unitChoices;
+        worker.scaleCurve = scaleCurve;
+        worker.unitCurve = unitCurve;
+        worker.recordHolderDays = recordHolderDays;
+        worker.recordHolder = recordHolder;
+        worker.dateTextWidth = dateTextWidth;
+        worker.coverImage = coverImage;
+        worker.flagAtlas = flagAtlas;
+        worker.gameName = gameName;
+        worker.categoryName = categoryName;
+        worker.hasCover = hasCover;
+        worker.useMilliseconds = useMilliseconds;
+        worker.useMultiMode = useMultiMode;
+        worker.font = font;
+        worker.metadata = metadata;
+        worker.dataFolder = dataFolder;
+        worker.textMetrics = textMetrics;
+        worker.avatars = avatars;
+        worker.waitForAvatars = waitForAvatars;
+        worker.drawAvatars = drawAvatars;
+        worker.drawComments = drawComments;
+        worker.drawLabels = drawLabels;
+        // profilers aren't thread-safe, so each worker records its own frames
+        if (profiler != null) worker.profiler = new FrameProfiler(profiler.getMaxSamples());
+        return worker;
     }
 
     public void settings() { // diet setup
-        size(S_WIDTH, S_HEIGHT);
+        // i.e. -Drenderer=p2d to draw with OpenGL instead of on the CPU
+        String rendererName = System.getProperty("renderer", "");
+        if (rendererName.equalsIgnoreCase("p2d")) renderer = P2D;
+        if (rendererName.equalsIgnoreCase("java2d")) renderer = JAVA2D;
+        // i.e. -Dsize=3840x2160 to render at another resolution
+        if (System.getProperty("size") != null) layout = Layout.parse(System.getProperty("size"), DISPLAY_RANKS);
+        size(layout.width, layout.height, renderer);
     }
 
     public void setup() {
-        frameRate(60);
-        missingFlag = loadImage("missing_flag.png");
+        frameRate(FRAME_RATE);
+        // i.e. -Dmetrics=metrics.csv to record the timings of every frame
+        if (metricsFile == null && System.getProperty("metrics") != null) metricsFile = new File(System.getProperty("metrics"));
+        if (metricsFile != null && profiler == null) profiler = new FrameProfiler();
+        if (dataFolder == null) dataFolder = new File(sketchPath("data"));
         font = loadFont("UbuntuCondensed-Regular-96.vlw");//"Jygquif1-96.vlw");
-        String[] textFile = loadStrings("runs.csv");
-
-        for (File file : listFiles(sketchPath("data")+"\\"+FLAG_FOLDER)) {
-            String filename = file.getName();
-            String country = filename.substring(0, filename.lastIndexOf('.'));
-            flags.put(country, loadImage(file.getAbsolutePath()));
+        loadFlags();
+
+        // use the pre-processed timeline if it has been generated (and is up to date)
+        File timelineFile = new File(dataFolder, TimelineFile.FILE_NAME);
+        boolean timelineOutdated = timelineFile.lastModified() < getRunsFile().lastModified()
+                || timelineFile.lastModified() < new File(dataFolder, "metadata.json").lastModified();
+        if (timelineFile.exists() && timelineOutdated) {
+            println(TimelineFile.FILE_NAME + " is older than the source data, ignoring it");
+        } else if (timelineFile.exists() && !TimelineFile.isCurrentVersion(timelineFile)) {
+            println(TimelineFile.FILE_NAME + " was written by another version, ignoring it (run TimelineFile to rebuild it)");
+            timelineOutdated = true;
         }
-
-        metadata = loadJSONObject("metadata.json");
-        categoryName = metadata.getString("category");
-        useMilliseconds = metadata.getBoolean("milli");
-        useMultiMode = metadata.getBoolean("multi");
-//        videoExport = new VideoExport(this, (metadata.getString("game")+"-"+categoryName).replaceAll("[^A-Za-z0-9 \\-_]", "_")+".mp4");
-        if (metadata.getBoolean("cover")) coverImage = loadImage(IMAGE_FOLDER+"_cover.png");
-        List<String> pfps = Arrays.asList(metadata.getJSONArray("pfps").getStringArray());
-        JSONObject players = metadata.getJSONObject("players");
-
-        DATA_LENGTH = textFile.length - 1;
-        maxes = new double[DATA_LENGTH];
-        unitChoices = new double[DATA_LENGTH];
-        dates = new Date[DATA_LENGTH];
-        recordHolderDays = new int[DATA_LENGTH];
-        runnerArray = new Speedrunner[players.keys().size()];
-
-        // create speedrunner objects
-        int c = 0;
-        for (Object playerObject : players.keys()) {
-            String player = (String) playerObject;
-            PImage img = null;
+        if (timelineFile.exists() && !timelineOutdated) {
             try {
-                if (pfps.contains(player)) img = loadImage(IMAGE_FOLDER + player + ".png");
-            } catch (Exception ignored ){}
-            Speedrunner speedrunner = new Speedrunner(player, players.getJSONArray(player), DATA_LENGTH, img, flags);
-            if (speedrunner.getFlag() == null) {
-                speedrunner.setFlag(missingFlag);
+                TimelineFile.read(this, timelineFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read " + TimelineFile.FILE_NAME, e);
             }
-            speedrunners.put(player, speedrunner);
-            runnerArray[c] = speedrunner;
-            c++;
+        } else {
+            loadData();
         }
+//        videoExport = new VideoExport(this, (gameName+"-"+categoryName).replaceAll("[^A-Za-z0-9 \\-_]", "_")+".mp4");
+        if (hasCover) coverImage = loadImage(IMAGE_FOLDER+"_cover.png");
+        // pictures are looked up like loadImage would: in the data folder, then in the sketch folder
+        File[] avatarFolders = {new File(dataFolder, IMAGE_FOLDER), new File(sketchPath(IMAGE_FOLDER))};
+        avatars = new AvatarLoader(avatarFolders, pfps, layout.avatarDimensions, AVATAR_CACHE_SIZE);
+
+        // i.e. -Dpreview to skim through the timeline (see Preview for the controls)
+        if (System.getProperty("preview") != null) preview = new Preview(getFrameCount(), FRAME_RATE);
+
+        // OpenGL draws all bars in one go, everything else is already batched by the renderer
+        if (g.isGL()) barBatch = new BarBatch(this, BAR_BATCH_SIZE);
 
-        initUserData(textFile);
         initUnits();
+        initRankCurves();
+        initActiveRunners();
 
         // find size of date text to get the offset for the "the fastest speedruns on..." text
-        textFont(font, DATE_FONT_SIZE);
+        textFont(font, layout.dateFontSize);
         for (Date date : dates) {
             dateTextWidth = max(textWidth(dateToString(date)), dateTextWidth);
         }
 
-        // pre-process platform shorthands
-        JSONObject runs = metadata.getJSONObject("runs");
-        for (Object runObject : runs.keys()) {
-            String runID = (String) runObject;
-            JSONObject runData = runs.getJSONObject(runID);
-            if (!runData.isNull("platform")) {
-                runData.setString("platform", getShortPlatform(runData.getString("platform")));
-            }
-        }
-
 //        videoExport.startMovie();
     }
 
-    public void initUserData(String[] textFile) {
-        JSONObject runData = metadata.getJSONObject("runs");
-        String[] header = textFile[0].split(",");
-        for (int i = 1; i < textFile.length; i++) {
-            String row = textFile[i];
-            String[] cols = row.split(",");
-            String date = cols[0];
-            String[] dateSplitStr = date.split("-");
-            int[] dateSplit = new int[3];
-            for (int d = 0; d < dateSplitStr.length; d++) {
-                dateSplit[d] = Integer.parseInt(dateSplitStr[d]);
+    /**
+     * Loads the flag atlas if it has been built (and is up to date and the right size), otherwise packs one from
+     * the flags folder.
+     */
+    public void loadFlags() {
+        File flagFolder = getFlagFolder(new File(sketchPath()));
+        File missingFlagFile = new File(dataFolder, FlagAtlas.MISSING_FLAG_FILE);
+        File atlasFile = new File(dataFolder, FlagAtlas.IMAGE_FILE);
+        File indexFile = new File(dataFolder, FlagAtlas.INDEX_FILE);
+        // adding or removing a flag updates the folder's modification time
+        long atlasModified = Math.min(atlasFile.lastModified(), indexFile.lastModified());
+        boolean atlasOutdated = atlasModified < flagFolder.lastModified() || atlasModified < missingFlagFile.lastModified();
+        if (atlasFile.exists() && indexFile.exists() && atlasOutdated) {
+            println(FlagAtlas.IMAGE_FILE + " is older than the flags, ignoring it");
+        }
+        try {
+            if (atlasFile.exists() && indexFile.exists() && !atlasOutdated) {
+                flagAtlas = FlagAtlas.load(atlasFile, indexFile);
+            }
+            // an atlas built for another resolution would have to be scaled again anyway
+            if (flagAtlas == null || flagAtlas.getSize() != layout.flagDimensions) {
+                flagAtlas = FlagAtlas.build(flagFolder, missingFlagFile, layout.flagDimensions);
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load the flags", e);
+        }
+    }
 
-            LocalDate localDate = LocalDate.of(dateSplit[0], dateSplit[1], dateSplit[2]);
-            dates[i-1] = Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
-            List<Speedrunner> runners = new ArrayList<Speedrunner>();
-            for (int c = 1; c < cols.length; c++) {
-                String runID = cols[c];
-                // default values are fine so ignore empty data
-                if (runID.isEmpty()) {
-                    continue;
-                }
+    /**
+     * @return the folder the flags of a sketch are loaded from
+     */
+    public static File getFlagFolder(File sketchFolder) {
+        // "data\flags" is a plain file name outside of Windows, which existing sketches already rely on
+        return new File(new File(sketchFolder, "data").getPath() + "\\" + FLAG_FOLDER);
+    }
 
-                JSONObject run = runData.getJSONObject(runID);
-                float time = run.getFloat("time_t");
+    /**
+     * @return the file the runs are loaded from: the event log (see {@link RunsLogReader}) unless runs.csv is newer
+     */
+    public File getRunsFile() {
+        File csvFile = new File(dataFolder, "runs.csv");
+        File logFile = new File(dataFolder, RunsLogReader.FILE_NAME);
+        return logFile.exists() && logFile.lastModified() >= csvFile.lastModified() ? logFile : csvFile;
+    }
+
+    /**
+     * Loads the timeline from metadata.json and runs.csv (or its event log).
+     */
+    public void loadData() {
+        File runsFile = getRunsFile();
+        RunsReader runsReader;
+        try {
+            runsReader = runsFile.getName().equals(RunsLogReader.FILE_NAME) ? new RunsLogReader(runsFile) : new RunsCsvReader(runsFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read " + runsFile.getName(), e);
+        }
 
+        metadata = loadJSONObject(new File(dataFolder, "metadata.json"));
+        gameName = metadata.getString("game");
+        categoryName = metadata.getString("category");
+        useMilliseconds = metadata.getBoolean("milli");
+        useMultiMode = metadata.getBoolean("multi");
+        hasCover = metadata.getBoolean("cover");
+        pfps.addAll(Arrays.asList(metadata.getJSONArray("pfps").getStringArray()));
+        JSONObject players = metadata.getJSONObject("players");
 
-                String head = header[c];
-                Speedrunner speedrunner = speedrunners.get(head);
-                speedrunner.values[i - 1] = time-MIN_VALUE;
-                speedrunner.displayValues[i - 1] = displayTime(time, useMilliseconds, true, true);
+        // pre-process runs (and their platform shorthands)
+        JSONObject runData = metadata.getJSONObject("runs");
+        runTable = new Run[runData.size()];
+        int r = 0;
+        for (Object runObject : runData.keys()) {
+            String runID = (String) runObject;
+            runTable[r] = Run.fromJSON(r, runID, runData.getJSONObject(runID));
+            runs.put(runID, runTable[r]);
+            r++;
+        }
 
-                // save runs
-                int runIndex = -1;
-                for (int r = 0; r < speedrunner.runs.size(); r++) {
-                    if (speedrunner.runs.get(r).equals(runID)) {
-                        runIndex = r;
-                        break;
-                    }
-                }
-                if (runIndex == -1) {
-                    runIndex = speedrunner.runs.size();
-                    speedrunner.runs.add(runID);
-                }
-                speedrunner.runIndex[i-1] = runIndex;
+        // most runners never make it on screen, so only the ones who do are loaded
+        Set<String> rankedRunners = TimelinePreprocessor.findRankedRunners(runsReader.copy(), runs, DISPLAY_RANKS);
 
-                speedrunner.setSortValue(i-1);
-                runners.add(speedrunner);
-            }
+        DATA_LENGTH = runsReader.getDayCount();
+        maxes = new double[DATA_LENGTH];
+        unitChoices = new double[DATA_LENGTH];
+        dates = new Date[DATA_LENGTH];
+        recordHolderDays = new int[DATA_LENGTH];
+        runnerArray = new Speedrunner[rankedRunners.size()];
 
-            // sort :)
-            Collections.sort(runners);
-            // update ranks
-            int maxValueAt = Math.min(runners.size(), DISPLAY_RANKS)-1;
-            double previousMax = -1;
-            if (i > 1) previousMax = maxes[i-2];
-            for (int c = 0; c < runners.size() && c < DISPLAY_RANKS; c++) {
-                Speedrunner runner = runners.get(c);
-                runner.ranks[i-1] = c;
-                double val = runner.values[i-1];
-                if (c <= maxValueAt) {
-                    if (previousMax != -1) val = Math.min(val, previousMax);
-                    maxes[i-1] = val;
-                }
-                if (c == 0) {
-                    if (recordHolder == null || recordHolder != runner) {
-                        recordHolder = runner;
-                    } else {
-                        recordHolderDays[i-1] = recordHolderDays[i-2]+1;
-                    }
-                }
-            }
+        // create speedrunner objects (colors only depend on the uuid, so they can be created in any order)
+        List<String> runnerIDs = new ArrayList<String>();
+        for (Object playerObject : players.keys()) {
+            if (rankedRunners.contains(playerObject)) runnerIDs.add((String) playerObject);
+        }
+        TimelinePreprocessor.forEach(preprocessThreads, runnerIDs.size(),
+                c -> runnerArray[c] = new Speedrunner(c, runnerIDs.get(c), players.getJSONArray(runnerIDs.get(c))));
+        for (Speedrunner speedrunner : runnerArray) {
+            speedrunners.put(speedrunner.getUuid(), speedrunner);
         }
+
+        initUserData(runsReader);
+    }
+
+    /**
+     * @return the runner's profile picture (scaled to the layout's avatar size), {@link AvatarLoader#MISSING} if
+     *         it couldn't be loaded (or pictures are turned off), or null if it's still loading or they don't have one
+     */
+    public PImage getAvatar(Speedrunner sr) {
+        if (!drawAvatars) return avatars.hasAvatar(sr.getUuid()) ? AvatarLoader.MISSING : null;
+        return avatars.get(sr.getUuid(), waitForAvatars);
+    }
+
+    public void initUserData(RunsReader reader) {
+        new TimelinePreprocessor(this, preprocessThreads).process(reader);
     }
 
     public void initUnits() {
-        for (int d = 0; d < DATA_LENGTH; d++) {
+        // NaN never equals itself, so the curves keep every day instead of treating some value as the baseline
+        scaleCurve = new SmoothedCurve(toFloats(maxes), X_SCALE_SMOOTHING, AXIS_RESOLUTION, Float.NaN);
+
+        TimelinePreprocessor.forEach(preprocessThreads, DATA_LENGTH, d -> {
             float scale = getXScale(d);
             for (int u = 0; u < SCALE_UNITS.length; u++) {
                 if (SCALE_UNITS[u] >= scale/UNITS_GOAL) {
@@ -250,85 +378,111 @@ public class VisApplet extends PApplet {
                     break;
                 }
             }
-        }
+        });
+        unitCurve = new SmoothedCurve(toFloats(unitChoices), TICK_FADE_SPEED, AXIS_RESOLUTION, Float.NaN);
     }
 
-    public float stepIndex(float[] values, float index) {
-        return values[(int) index];
+    private static float[] toFloats(double[] values) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) floats[i] = (float) values[i];
+        return floats;
     }
 
-    public float linIndex(float[] values, float index) {
-        int indexInt = (int) index;
-        float indexRem = index%1.0f;
-        float before = values[indexInt];
-        float after = values[min(indexInt+1, values.length-1)];
-        return lerp(before, after, indexRem);
+    public void initRankCurves() {
+        TimelinePreprocessor.forEach(preprocessThreads, runnerArray.length,
+                r -> runnerArray[r].initRankCurve(timeline, RANK_SMOOTHING, RANK_RESOLUTION));
     }
 
-    public float linIndex(int[] values, float index) {
-        float[] floatValues = new float[values.length];
-        for (int i = 0; i < values.length; i++) {
-            floatValues[i] = values[i];
+    public void initActiveRunners() {
+        // count first so each day's list can be allocated at its final size
+        int[] counts = new int[DATA_LENGTH];
+        for (Speedrunner sr : runnerArray) {
+            SmoothedCurve curve = sr.getRankCurve();
+            if (curve.isEmpty()) continue;
+            int end = getActiveEnd(curve);
+            for (int d = getActiveStart(curve); d <= end; d++) {
+                counts[d]++;
+            }
+        }
+
+        activeRunners = new Speedrunner[DATA_LENGTH][];
+        for (int d = 0; d < DATA_LENGTH; d++) {
+            activeRunners[d] = new Speedrunner[counts[d]];
+            counts[d] = 0;
         }
-        return linIndex(floatValues, index);
-    }
-
-    // averagingWindow generally corresponds to how snappy animations are
-    // larger values have a larger window of averaging, making it smoother
-    public float avgIndex(float[] values, float index, float averagingWindow) {
-        int startIndex = max(0, ceil(index-averagingWindow));
-        int endIndex = min(values.length-1, floor(index+averagingWindow));
-        float sum = 0;
-        float count = 0;
-        for (int i = startIndex; i <= endIndex; i++){
-            float val = values[i];
-            float weight = 0.5f + 0.5f*cos((i-index)/averagingWindow * PI);
-            count += weight;
-            sum += val*weight;
+        // runners are added in runnerArray order so bars still overlap the same way
+        for (Speedrunner sr : runnerArray) {
+            SmoothedCurve curve = sr.getRankCurve();
+            if (curve.isEmpty()) continue;
+            int end = getActiveEnd(curve);
+            for (int d = getActiveStart(curve); d <= end; d++) {
+                activeRunners[d][counts[d]++] = sr;
+            }
         }
-        return sum/count;
     }
 
-    public float avgIndex(int[] values, float index, float averagingWindow) {
-        float[] floatValues = new float[values.length];
-        for (int i = 0; i < values.length; i++) {
-            floatValues[i] = values[i];
-        }
-        return avgIndex(floatValues, index, averagingWindow);
+    private int getActiveStart(SmoothedCurve curve) {
+        return max(0, floor(curve.getStartDay()));
     }
 
-    public float avgIndex(double[] values, float index, float averagingWindow) {
-        float[] floatValues = new float[values.length];
-        for (int i = 0; i < values.length; i++) {
-            floatValues[i] = (float) values[i];
-        }
-        return avgIndex(floatValues, index, averagingWindow);
+    private int getActiveEnd(SmoothedCurve curve) {
+        return min(DATA_LENGTH-1, ceil(curve.getEndDay())-1);
+    }
+
+    public float stepIndex(float[] values, float index) {
+        return values[(int) index];
     }
 
     public float getXScale(float at) {
-        return avgIndex(maxes, at, 14);
+        if (scaleCurve != null) return scaleCurve.get(at);
+        return SmoothedCurve.average(toFloats(maxes), at, X_SCALE_SMOOTHING);
     }
 
-    public static float valueToX(float value, float scale) {
-        return lerp(X_MIN, X_MAX*0.95f, value/scale);
+    /**
+     * @return the smoothed index into {@link #SCALE_UNITS} of the tick marks' unit
+     */
+    public float getUnitChoice(float at) {
+        if (unitCurve != null) return unitCurve.get(at);
+        return SmoothedCurve.average(toFloats(unitChoices), at, TICK_FADE_SPEED);
     }
 
-    public static float rankToY(float rank) {
-        return Y_MIN + rank * ((float) HEIGHT/DISPLAY_RANKS);
+    /**
+     * @return the label of the {@code multiple}th tick mark of a unit, formatted the first time it's needed
+     */
+    public String getTickLabel(int unitIndex, int multiple) {
+        String[] labels = tickLabels[unitIndex];
+        if (labels == null || multiple >= labels.length) {
+            labels = labels == null ? new String[max(16, multiple+1)] : Arrays.copyOf(labels, max(labels.length*2, multiple+1));
+            tickLabels[unitIndex] = labels;
+        }
+        if (labels[multiple] == null) {
+            labels[multiple] = displayTime(multiple*SCALE_UNITS[unitIndex]+MIN_VALUE, false, false, true);
+        }
+        return labels[multiple];
     }
 
     public static float getDayFromFrames(int frames) {
         return frames/FRAMES_PER_DAY;
     }
 
+    /**
+     * @return how many frames it takes to play through the whole timeline
+     */
+    public int getFrameCount() {
+        int count = ceil(DATA_LENGTH * FRAMES_PER_DAY);
+        // the last frame is the last one whose (rounded) day still has data
+        while (count > 0 && round(getDayFromFrames(count-1)) >= DATA_LENGTH) count--;
+        return count;
+    }
+
     public void draw() {
-        float currentDayIndex = getDayFromFrames(frames);
-        float currentScale = getXScale(currentDayIndex);
-        background(0);
+        if (preview != null) {
+            drawPreview();
+            return;
+        }
         try {
-            drawHorizTickMarks(currentDayIndex, currentScale);
-            drawBackground(currentDayIndex);
-            drawBars(currentDayIndex, currentScale);
+            drawFrame(frames);
+            if (showProfiler) drawProfiler();
 //            videoExport.saveFrame();
         } catch (ArrayIndexOutOfBoundsException e) {
 //            videoExport.endMovie();
@@ -339,15 +493,185 @@ public class VisApplet extends PApplet {
         frames++;
     }
 
+    /**
+     * Draws whichever frame the preview is at, in the quality it asks for.
+     */
+    public void drawPreview() {
+        frames = preview.update();
+        int quality = preview.getQuality();
+        drawAvatars = quality < Preview.NO_DETAILS;
+        drawComments = quality < Preview.NO_DETAILS;
+        drawLabels = quality < Preview.SIMPLE_TEXT;
+
+        long start = System.nanoTime();
+        if (quality >= Preview.LOW_RESOLUTION) {
+            if (lowResWorker == null) {
+                lowResWorker = createWorker(new Layout(layout.width/2, layout.height/2, layout.displayRanks));
+                lowResFrame = createImage(lowResWorker.g.width, lowResWorker.g.height, RGB);
+            }
+            lowResWorker.drawAvatars = drawAvatars;
+            lowResWorker.drawComments = drawComments;
+            lowResWorker.drawLabels = drawLabels;
+            lowResWorker.g.beginDraw();
+            lowResWorker.drawFrame(frames);
+            lowResWorker.g.endDraw();
+            lowResWorker.g.loadPixels();
+            lowResFrame.loadPixels();
+            System.arraycopy(lowResWorker.g.pixels, 0, lowResFrame.pixels, 0, lowResFrame.pixels.length);
+            lowResFrame.updatePixels();
+            noTint();
+            image(lowResFrame, 0, 0, layout.width, layout.height);
+        } else {
+            drawFrame(frames);
+        }
+        preview.frameDrawn(System.nanoTime() - start);
+
+        // playback status in the bottom left corner
+        String status = preview.getStatus();
+        textFont(font, layout.px(20));
+        int boxHeight = layout.px(32);
+        fill(0, 0, 0, 200);
+        // measured directly, there's no point caching a different string every frame
+        rect(0, layout.height-boxHeight, g.textWidth(status)+layout.px(20), boxHeight);
+        fill(255);
+        textAlign(LEFT, CENTER);
+        text(status, layout.px(10), layout.height-boxHeight/2f);
+        if (showProfiler) drawProfiler();
+    }
+
+    public void drawFrame(int frame) {
+        if (profiler != null) profiler.beginFrame(frame);
+        float currentDayIndex = getDayFromFrames(frame);
+        float currentScale = getXScale(currentDayIndex);
+        background(0);
+        // styles carry over between frames, so reset the ones that would otherwise depend on the previous frame
+        noStroke();
+        long start = startTiming();
+        drawHorizTickMarks(currentDayIndex, currentScale);
+        endTiming(FrameProfiler.TICKS, start);
+        start = startTiming();
+        drawBackground(currentDayIndex);
+        endTiming(FrameProfiler.BACKGROUND, start);
+        start = startTiming();
+        drawBars(currentDayIndex, currentScale);
+        endTiming(FrameProfiler.BARS, start);
+        if (profiler != null) profiler.endFrame();
+    }
+
+    private long startTiming() {
+        return profiler == null ? 0 : System.nanoTime();
+    }
+
+    private void endTiming(int phase, long start) {
+        if (profiler != null) profiler.add(phase, System.nanoTime() - start);
+    }
+
+    // text and images are drawn all over the place, so they're timed here instead of at every call
+
+    @Override
+    public void text(String str, float x, float y) {
+        long start = startTiming();
+        super.text(str, x, y);
+        endTiming(FrameProfiler.TEXT, start);
+    }
+
+    @Override
+    public float textWidth(String str) {
+        long start = startTiming();
+        float width = textMetrics.getWidth(g, str);
+        endTiming(FrameProfiler.TEXT, start);
+        return width;
+    }
+
+    @Override
+    public void image(PImage img, float a, float b) {
+        long start = startTiming();
+        super.image(img, a, b);
+        endTiming(FrameProfiler.IMAGES, start);
+    }
+
+    @Override
+    public void image(PImage img, float a, float b, float c, float d) {
+        long start = startTiming();
+        super.image(img, a, b, c, d);
+        endTiming(FrameProfiler.IMAGES, start);
+    }
+
+    @Override
+    public void image(PImage img, float a, float b, float c, float d, int u1, int v1, int u2, int v2) {
+        long start = startTiming();
+        super.image(img, a, b, c, d, u1, v1, u2, v2);
+        endTiming(FrameProfiler.IMAGES, start);
+    }
+
+    /**
+     * Draws the timings of the last frame in the bottom right corner.
+     */
+    public void drawProfiler() {
+        FrameProfiler.Sample sample = profiler.getLastSample();
+        if (sample == null) return;
+
+        List<String> lines = new ArrayList<String>();
+        lines.add(String.format("frame %d: %.2fms (p50 %.2f, p95 %.2f, p99 %.2f)", sample.frame, sample.totalTime/1e6,
+                profiler.getPercentile(50, PROFILER_WINDOW)/1e6, profiler.getPercentile(95, PROFILER_WINDOW)/1e6,
+                profiler.getPercentile(99, PROFILER_WINDOW)/1e6));
+        for (int p = 0; p < FrameProfiler.PHASE_NAMES.length; p++) {
+            lines.add(String.format("%s: %.2fms", FrameProfiler.PHASE_NAMES[p], sample.phaseTimes[p]/1e6));
+        }
+        lines.add(String.format("allocated: %.1fkB, gc: %d (%dms)", sample.allocatedBytes/1024.0, sample.gcCount, sample.gcTime));
+
+        // the overlay itself shouldn't count towards the next frame's text time
+        FrameProfiler frameProfiler = profiler;
+        profiler = null;
+        int lineHeight = layout.px(22);
+        int boxHeight = lines.size()*lineHeight + layout.px(10);
+        int boxWidth = layout.px(460);
+        textFont(font, layout.px(20));
+        fill(0, 0, 0, 200);
+        rect(layout.width-boxWidth, layout.height-boxHeight, boxWidth, boxHeight);
+        fill(255);
+        textAlign(LEFT, TOP);
+        for (int l = 0; l < lines.size(); l++) {
+            text(lines.get(l), layout.width-boxWidth+layout.px(10), layout.height-boxHeight+layout.px(5)+l*lineHeight);
+        }
+        profiler = frameProfiler;
+    }
+
+    public void keyPressed(KeyEvent event) {
+        if (preview != null) preview.keyPressed(key, keyCode, event.isShiftDown());
+        if (key == PROFILER_KEY) {
+            showProfiler = !showProfiler;
+            // without a metrics file (which sets up its own profiler), only the overlay's window is needed
+            if (showProfiler && profiler == null) profiler = new FrameProfiler(PROFILER_WINDOW);
+        }
+    }
+
+    public void mousePressed() {
+        if (preview != null) preview.mousePressed(mouseX, layout.width);
+    }
+
+    public void dispose() {
+        if (profiler != null && metricsFile != null) {
+            try {
+                profiler.write(metricsFile);
+                println("Saved frame timings to " + metricsFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (avatars != null) avatars.shutdown();
+        super.dispose();
+    }
+
     public void drawBackground(float currentDay) {
         tint(255, 255);
         fill(255f);
-        textFont(font, DATE_FONT_SIZE);
+        textFont(font, layout.dateFontSize);
 
         // date
         textAlign(RIGHT, BASELINE);
-        int dateX = S_WIDTH - TITLE_SIDE_MARGIN;
-        text(dateToString(dates[floor(currentDay)]), dateX, TITLE_TOP_MARGIN);
+        int dateX = layout.width - layout.titleSideMargin;
+        text(dateToString(dates[floor(currentDay)]), dateX, layout.titleTopMargin);
 
         // "top X speedruns on..."
         // fill(GRAY_COLOR);
@@ -356,103 +680,86 @@ public class VisApplet extends PApplet {
         // fill(255f);
 
         // cover img
-        int textX = TITLE_SIDE_MARGIN;
+        int textX = layout.titleSideMargin;
         if (coverImage != null) {
-            float ratio = (float) DATE_FONT_SIZE/coverImage.pixelHeight;
+            float ratio = (float) layout.dateFontSize/coverImage.pixelHeight;
             int imgW = (int) (coverImage.pixelWidth * ratio);
-            image(coverImage, textX, TITLE_TOP_MARGIN-DATE_FONT_SIZE+20, imgW, DATE_FONT_SIZE);
-            textX += imgW+8;
+            image(coverImage, textX, layout.titleTopMargin-layout.dateFontSize+layout.px(20), imgW, layout.dateFontSize);
+            textX += imgW+layout.px(8);
         }
 
         // game + category
-        String game = metadata.getString("game");
+        String game = gameName;
 
         textAlign(LEFT, BASELINE);
-        textSize(DATE_FONT_SIZE);
-        text(game, textX, TITLE_TOP_MARGIN);
+        textSize(layout.dateFontSize);
+        text(game, textX, layout.titleTopMargin);
 
-        int categoryX = (int) (textWidth(game)+16+textX);
-        textSize(DATE_FONT_SIZE * (2f/3f));
+        int categoryX = (int) (textWidth(game)+layout.px(16)+textX);
+        textSize(layout.dateFontSize * (2f/3f));
         fill(GRAY_COLOR); // 0.8f * 255
-        text(categoryName, categoryX, TITLE_TOP_MARGIN);
+        text(categoryName, categoryX, layout.titleTopMargin);
 
         // 1st 2nd etc
-        int pX = X_MIN-6;
+        int pX = layout.xMin-layout.px(6);
         fill(DARK_GRAY_COLOR);
-        textSize(NAME_FONT_SIZE*(2f/3f));
+        textSize(layout.nameFontSize*(2f/3f));
         textAlign(RIGHT, CENTER);
-        for (int p = 0; p < DISPLAY_RANKS; p++) {
+        for (int p = 0; p < layout.displayRanks; p++) {
             String pText = PLACEMENTS[p];
-            int pY = jitterFix(rankToY(p)) + BAR_HEIGHT_HALF;
+            int pY = jitterFix(layout.rankToY(p)) + layout.barHeightHalf;
             text(pText, pX, pY);
         }
 
         // WR for ...
         fill(0xFFFFE200);
         textAlign(LEFT, BOTTOM);
-        int fontSize = (int) (NAME_FONT_SIZE * (3f/4f));
+        int fontSize = (int) (layout.nameFontSize * (3f/4f));
         textSize(fontSize);
-        text("WR holder for", TITLE_SIDE_MARGIN, Y_MIN-fontSize);
-        text(displayDays(recordHolderDays[round(currentDay)]), TITLE_SIDE_MARGIN, Y_MIN);
+        text("WR holder for", layout.titleSideMargin, layout.yMin-fontSize);
+        text(displayDays(recordHolderDays[round(currentDay)]), layout.titleSideMargin, layout.yMin);
     }
 
     public void drawHorizTickMarks(float currentDay, float currentScale) {
-        float preferredUnit = avgIndex(unitChoices, currentDay, TICK_FADE_SPEED);
+        float preferredUnit = getUnitChoice(currentDay);
         int unitIndex = jitterFix(preferredUnit);
-        int thisUnit = SCALE_UNITS[unitIndex];
-        int nextUnit = SCALE_UNITS[unitIndex+1];
         float unitRem = preferredUnit % 1.0f;
         if (unitRem > 0.99) {unitRem = 0;}
-        drawTickMarksOfUnit(thisUnit, currentScale, 255-unitRem*255);
+        drawTickMarksOfUnit(unitIndex, currentScale, 255-unitRem*255);
         if (unitRem >= 0.01) {
-            drawTickMarksOfUnit(nextUnit, currentScale, unitRem*255);
+            drawTickMarksOfUnit(unitIndex+1, currentScale, unitRem*255);
         }
     }
 
-    public void drawTickMarksOfUnit(int thisUnit, float currentScale, float opacity) {
+    public void drawTickMarksOfUnit(int unitIndex, float currentScale, float opacity) {
+        int thisUnit = SCALE_UNITS[unitIndex];
         fill(100, 100, 100, opacity);
-        textFont(font, 50);
+        textFont(font, layout.tickFontSize);
         for (int v = 0; v < currentScale * 1.4; v+=thisUnit) {
             boolean firstMark = v == 0;
             if (firstMark) continue;
 
-            int x = jitterFix(valueToX(v, currentScale));
+            int x = jitterFix(layout.valueToX(v, currentScale));
 
-            float W = 4; // width of the bar
+            float W = layout.px(4); // width of the bar
             float Wh = W/2f; // half of the width of the bar
-            float yOffset = 20; // how far above the top of the screen to render
-            rect(x-Wh, Y_MIN-yOffset, W, HEIGHT+yOffset);
+            float yOffset = layout.px(20); // how far above the top of the screen to render
+            rect(x-Wh, layout.yMin-yOffset, W, layout.drawHeight+yOffset);
 
             int align = CENTER;
             //int align = firstMark ? LEFT : CENTER;
             //if (firstMark) x -= 10;
 
             textAlign(align);
-            String display = displayTime(v+MIN_VALUE, false, false, true);
-            text(display, x, Y_MIN-yOffset-10);
+            long start = startTiming();
+            String display = getTickLabel(unitIndex, v/thisUnit);
+            text(display, x, layout.yMin-yOffset-layout.px(10));
+            endTiming(FrameProfiler.TICK_LABELS, start);
         }
     }
 
     public static String displayTime(float seconds, boolean useMilliseconds, boolean useSeconds, boolean useHours) {
-        int h = (int) ((seconds/60)/60);
-        Object[] args = {h, (int) ((seconds/60) % 60), seconds%60};
-        String outH = "%dh %02dm ";
-        if (!useHours || h == 0) {
-            args = Arrays.copyOfRange(args, 1, args.length);
-            outH = "%dm ";
-        }
-        String outS = "";
-        if (useSeconds) {
-            int i = args.length-1;
-            Float s = (Float) args[i];
-            if (useMilliseconds && (s % 1.0f) > 0f) {
-                outS = "%06.3fs";
-            } else {
-                outS = "%02ds";
-                args[i] = floor(s);
-            }
-        }
-        return String.format(outH+outS, args);
+        return TimeFormatter.forThread().formatDuration(seconds, useMilliseconds, useSeconds, useHours);
     }
 
     public static String displayDays(int days) {
@@ -472,186 +779,187 @@ public class VisApplet extends PApplet {
     }
 
     public void drawBars(float currentDay, float currentScale) {
+        // start loading the pictures of runners who are about to show up
+        if (drawAvatars) {
+            for (Speedrunner sr : activeRunners[min(DATA_LENGTH-1, floor(currentDay)+AVATAR_PREFETCH_DAYS)]) {
+                avatars.request(sr.getUuid());
+            }
+        }
+
         noStroke();
-        textFont(font, NAME_FONT_SIZE);
-        JSONObject runs = metadata.getJSONObject("runs");
-        for (Speedrunner sr : runnerArray) {
+        Speedrunner[] runners = activeRunners[floor(currentDay)];
+        int dIndex = round(currentDay); // get index for fixed data (comments, display time)
+        if (barBatch != null) {
+            // all bars (and their triangles) first, in one draw call
+            barBatch.clear();
+            for (Speedrunner sr : runners) {
+                int y = getBarY(sr, currentDay);
+                if (y > layout.height || timeline.getRunIndex(sr.getId(), dIndex) == TimelineStore.NO_RUN) continue;
+                int x = getBarX(sr, currentDay, currentScale);
+                int clr = sr.getClr().getRGB();
+                if (x > layout.xMax) {
+                    x = layout.barMaxX;
+                    barBatch.addTriangle(layout.barMaxX, y, layout.barMaxX, y+layout.barHeight, layout.barMaxX+layout.triangleSize, y+layout.barHeightHalf, clr);
+                }
+                barBatch.addRect(layout.xMin, y, x - layout.xMin, layout.barHeight, clr);
+            }
+            barBatch.draw(g);
+        }
+
+        textFont(font, layout.nameFontSize);
+        for (Speedrunner sr : runners) {
             // get base values
-            float val = linIndex(sr.values, currentDay);
-            float fx = valueToX(val, currentScale);
-            float rank = avgIndex(sr.ranks, currentDay, RANK_SMOOTHING);
-            float fy = rankToY(rank);
-            int x = jitterFix(fx);
-            int y = jitterFix(fy);
-            int dIndex = round(currentDay); // get index for fixed data (comments, display time)
+            int x = getBarX(sr, currentDay, currentScale);
+            int y = getBarY(sr, currentDay);
             // skip if off screen
-            if (y > S_HEIGHT) {
+            if (y > layout.height) {
                 continue;
             }
-            int runIndex = sr.runIndex[dIndex];
-            if (runIndex == -1) continue;
-            JSONObject run = runs.getJSONObject(sr.runs.get(runIndex));
+            int runIndex = timeline.getRunIndex(sr.getId(), dIndex);
+            if (runIndex == TimelineStore.NO_RUN) continue;
+            Run run = sr.runs.get(runIndex);
 
-            String timeText = sr.displayValues[dIndex];
-            if (timeText.isEmpty()) {
-                continue;
-            }
+            String timeText = sr.runDisplayValues.get(runIndex);
 
-            int platX = x+PLATFORM_MARGIN; // platform value, added here so the tri code can increment it
+            int platX = x+layout.platformMargin; // platform value, added here so the tri code can increment it
 
             // bar fill color
             Color srClr = sr.getClr();
             fill(srClr.getRed(), srClr.getGreen(), srClr.getBlue());
 
             // draw triangle for runs that would go off the screen
-            if (x > X_MAX) {
-                x = BAR_MAX_X;
-                platX = BAR_MAX_X+TRIANGLE_SIZE+PLATFORM_MARGIN;
-                triangle(BAR_MAX_X, y, BAR_MAX_X, y+BAR_HEIGHT, BAR_MAX_X+TRIANGLE_SIZE, y+BAR_HEIGHT_HALF);
+            if (x > layout.xMax) {
+                x = layout.barMaxX;
+                platX = layout.barMaxX+layout.triangleSize+layout.platformMargin;
+                if (barBatch == null) triangle(layout.barMaxX, y, layout.barMaxX, y+layout.barHeight, layout.barMaxX+layout.triangleSize, y+layout.barHeightHalf);
             }
 
-            // draw bar
-            rect(X_MIN, y, x - X_MIN, BAR_HEIGHT);
+            // draw bar (unless it's been batched already)
+            if (barBatch == null) rect(layout.xMin, y, x - layout.xMin, layout.barHeight);
 
             // set text position variables
-            int textX = X_MIN + 6;
+            int textX = layout.xMin + layout.px(6);
             int origTextX = textX;
-            int textY = y+BAR_HEIGHT-NAME_TEXT_OFFSET;
-
-            // render profile picture
-            PImage pImage = sr.getpImage();
-            if (pImage != null){
-                // scale aspect ratios correctly (this might not be perfectly efficient)
-                int maxDim = BAR_HEIGHT - IMAGE_PADDING * 2;
-
-                int imgH;
-                float ratio;
-                int imgW;
-                int wOffset = 0;
-                int hOffset = 0;
-
-                if (pImage.pixelHeight >= pImage.pixelWidth) {
-                    imgH = maxDim;
-                    ratio = (float) imgH / pImage.pixelHeight;
-                    imgW = (int) (pImage.pixelWidth * ratio);
-                    wOffset = (maxDim - imgW) / 2;
-                } else {
-                    imgW = maxDim;
-                    ratio = (float) imgW / pImage.pixelWidth;
-                    imgH = (int) (pImage.pixelHeight * ratio);
-                    hOffset = (maxDim - imgH) / 2;
-                }
-
-                // finally render img
-                tint(255, 255);
-                image(pImage, textX+wOffset, y+IMAGE_PADDING+hOffset, imgW, imgH);
-                textX += maxDim + 6; // offset username text
-            }
+            int textY = y+layout.barHeight-layout.nameTextOffset;
 
             // run comment
             textAlign(LEFT, TOP);
-            if (!run.isNull("comment")) {
-                String[] mComment = run.getString("comment").split("\r?\n");
-                String comment = mComment[0];
-                if (mComment.length > 1) comment += " [...]";
-                textSize(COMMENT_FONT_SIZE);
-                text(comment, origTextX, y + BAR_HEIGHT + 2);
+            if (drawComments && run.getCommentLine() != null) {
+                textSize(layout.commentFontSize);
+                text(run.getCommentLine(), origTextX, y + layout.barHeight + layout.px(2));
             }
 
-            textSize(NAME_FONT_SIZE);
+            textSize(layout.nameFontSize);
 
-            // runner name
-            textAlign(LEFT);
-            fill(255);
-            String displayName = sr.getDisplayName();
-            text(displayName, textX, textY);
-            int nameWidth = (int) textWidth(displayName);
+            // profile picture and runner name, pre-rendered
+            SpriteCache.Sprite sprite = spriteCache.getRunnerSprite(sr);
+            tint(255, 255);
+            image(sprite.image, textX, y-spriteCache.getPadding());
+            textX += sprite.nameX; // offset username text
+            int nameWidth = sprite.nameWidth;
 
-            int maxX = textX+nameWidth+MULTI_PADDING;
+            int maxX = textX+nameWidth+layout.multiPadding;
             int maxX2 = platX;
 
             // runner flag
-            int flagX = textX+nameWidth+4;//+FLAG_STROKE_WIDTH;
-            int flagAlpha = 230-(flagX+FLAG_DIMENSIONS-x);
-            int flagY = y + IMAGE_PADDING - 2;
+            int flagX = textX+nameWidth+layout.px(4);//+FLAG_STROKE_WIDTH;
+            int flagAlpha = 230-(int) ((flagX+layout.flagDimensions-x)/layout.scale); // fades over the same distance at any size
+            int flagY = y + layout.imagePadding - layout.px(2);
             // stroke code commented out because the flag files have whitespace so it doesnt really work
             // fill(255);
             // rect(flagX-FLAG_STROKE_WIDTH, flagY-FLAG_STROKE_WIDTH, FLAG_STROKE_DIMENSIONS, FLAG_STROKE_DIMENSIONS);
             tint(255, flagAlpha);
-            image(sr.getFlag(), flagX, flagY, FLAG_DIMENSIONS, FLAG_DIMENSIONS);
+            int flagCell = flagAtlas.getCell(sr.getFlagCode());
+            if (g.isGL()) {
+                // straight from the atlas, so flags share one texture and tinting is just a vertex color
+                int u = flagAtlas.getCellX(flagCell);
+                int v = flagAtlas.getCellY(flagCell);
+                image(flagAtlas.getAtlas(), flagX, flagY, layout.flagDimensions, layout.flagDimensions, u, v, u+layout.flagDimensions, v+layout.flagDimensions);
+            } else if (flagAtlas.getSize() != layout.flagDimensions) {
+                // i.e. a lower resolution preview
+                image(flagAtlas.getCellImage(flagCell), flagX, flagY, layout.flagDimensions, layout.flagDimensions);
+            } else {
+                image(flagAtlas.getCellImage(flagCell), flagX, flagY);
+            }
 
             // draw time w/ small milliseconds
             fill(255);
             textAlign(RIGHT);
-            int timeX = x-4;
-            int timeY = textY+3;
+            int timeX = x-layout.px(4);
+            int timeY = textY+layout.px(3);
             int timeWidth;
             if (!useMilliseconds || timeText.indexOf('.') == -1) {
                 timeWidth = (int) textWidth(timeText);
                 int timeOldX = timeX;
                 timeX = getMaxTimeX(timeX, maxX, maxX2, timeWidth);
-                if (timeX != timeOldX) platX = timeX+PLATFORM_MARGIN;
+                if (timeX != timeOldX) platX = timeX+layout.platformMargin;
                 text(timeText, timeX, timeY);
             } else {
-                int offset = timeText.length() - 5;
-                String others = timeText.substring(0, offset);
-                String millis = timeText.substring(offset);
-                textSize(NAME_FONT_SIZE * (1f / 2f));
+                String[] split = textMetrics.getMillisSplit(timeText);
+                String others = split[0];
+                String millis = split[1];
+                textSize(layout.nameFontSize * (1f / 2f));
                 // do some silly size things to ensure times don't become a glob of mess if bar is stretched wide
                 int mOffset = (int) textWidth(millis);
-                textSize(NAME_FONT_SIZE);
+                textSize(layout.nameFontSize);
                 timeWidth = mOffset + (int) textWidth(others);
-                textSize(NAME_FONT_SIZE * (1f / 2f));
+                textSize(layout.nameFontSize * (1f / 2f));
                 // draw text
                 int timeOldX = timeX;
                 timeX = getMaxTimeX(timeX, maxX, maxX2, timeWidth);
-                if (timeX != timeOldX) platX = timeX+PLATFORM_MARGIN;
+                if (timeX != timeOldX) platX = timeX+layout.platformMargin;
                 text(millis, timeX, timeY);
                 timeX -= mOffset;
                 text(others, timeX, timeY);
             }
 
             // draw category if in multi category mode
-            if (useMultiMode) {
+            if (useMultiMode && drawLabels) {
                 textAlign(LEFT);
-                float catSize = NAME_FONT_SIZE;
+                float catSize = layout.nameFontSize;
                 textSize(catSize);
 
                 // get position of text
-                int categoryX = flagX+FLAG_DIMENSIONS+MULTI_PADDING;
+                int categoryX = flagX+layout.flagDimensions+layout.multiPadding;
 
                 // ensure time doesn't overlap the time text
-                String catText = run.getString("category");
-                int maxCatValue = timeX - timeWidth - MULTI_PADDING;
+                String catText = run.getCategory();
+                // widths at every size the text can shrink to, measured once per category
+                TextMetrics.ShrinkTable catWidths = textMetrics.getShrinkTable(g, catText, catSize, layout.px(8));
+                int maxCatValue = timeX - timeWidth - layout.multiPadding;
                 // center text with smaller margins if text overlaps with time
-                if (categoryX + textWidth(catText) > maxCatValue) {
+                if (categoryX + catWidths.getWidth(0) > maxCatValue) {
                     textAlign(CENTER);
-                    maxCatValue = timeX - timeWidth - MULTI_MIN_PADDING;
-                    categoryX = (maxCatValue+flagX+FLAG_DIMENSIONS+MULTI_MIN_PADDING)/2;
+                    maxCatValue = timeX - timeWidth - layout.multiMinPadding;
+                    categoryX = (maxCatValue+flagX+layout.flagDimensions+layout.multiMinPadding)/2;
                 }
                 // shrink text size if still too large
-                while ((categoryX + (textWidth(catText)/2)) > maxCatValue) {
-                    if ((categoryX - (textWidth(catText)/2)) >= maxCatValue || catSize < 8f) {
-                        catSize = 0f;
-                        break;
-                    }
-                    catSize *= (99f/100f);
-                    textSize(catSize);
-                }
+                catSize = catWidths.fit(categoryX, maxCatValue);
                 // finally draw
                 if (catSize > 0) {
+                    textSize(catSize);
                     fill(255, 255, 255, 200);
-                    text(catText, categoryX, textY + 2);
+                    text(catText, categoryX, textY + layout.px(2));
                 }
             }
 
-            textAlign(LEFT, CENTER);
-            textSize(NAME_FONT_SIZE * (2f/3f));
-            fill(DARK_GRAY_COLOR);
-            text(getPlatformDisplay(run), platX, y+BAR_HEIGHT_HALF);
+            if (drawLabels) {
+                textAlign(LEFT, CENTER);
+                textSize(layout.nameFontSize * (2f/3f));
+                fill(DARK_GRAY_COLOR);
+                text(run.getPlatformLabel(), platX, y+layout.barHeightHalf);
+            }
         }
     }
 
+    private int getBarX(Speedrunner sr, float currentDay, float currentScale) {
+        return jitterFix(layout.valueToX(timeline.linValue(sr.getId(), currentDay), currentScale));
+    }
+
+    private int getBarY(Speedrunner sr, float currentDay) {
+        return jitterFix(layout.rankToY(sr.getSmoothedRank(currentDay)));
+    }
+
     public static int getMaxTimeX(int timeX, int maxX, int maxX2, int timeWidth) {
         int timeMaxX = maxX + timeWidth;
         int timeMaxX2 = maxX2 + timeWidth;
@@ -760,15 +1068,8 @@ public class VisApplet extends PApplet {
         return platform;
     }
 
-    public static String getPlatformDisplay(JSONObject run) {
-        StringBuilder stringBuilder = new StringBuilder();
-        if (!run.isNull("region")) stringBuilder.append(run.getString("region").split(" / ")[0]);
-        if (!run.isNull("platform")) {
-            if (!stringBuilder.toString().isEmpty()) stringBuilder.append(' ');
-            stringBuilder.append(run.getString("platform"));
-        }
-        if (run.getBoolean("emulated")) stringBuilder.append(" emu");
-        return stringBuilder.toString();
+    public static String getPlatformDisplay(Run run) {
+        return run.getPlatformLabel();
     }
 
     public static void main(String[] args) {
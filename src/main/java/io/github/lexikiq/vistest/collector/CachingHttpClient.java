@@ -0,0 +1,113 @@
+package io.github.lexikiq.vistest.collector;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends GET requests through a shared {@link RateLimiter} and {@link ResponseCache}.
+ * <p>
+ * Cached responses younger than the requested maximum age are returned without touching the network; older ones are
+ * revalidated with their ETag or Last-Modified date, so an unchanged page costs a request but no download. Responses
+ * that ask us to slow down (420, which speedrun.com uses, 429 and 503) are retried after draining the rate limiter.
+ * Only successful responses are cached. The client is thread-safe.
+ */
+public class CachingHttpClient {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_BACKOFF_MILLIS = 5_000;
+    private static final String USER_AGENT = "speedrun-timeline";
+
+    private final HttpClient client;
+    private final RateLimiter limiter;
+    private final ResponseCache cache;
+    private final RateLimiter.Sleeper backoff;
+
+    public CachingHttpClient(RateLimiter limiter, ResponseCache cache) {
+        this(limiter, cache, RateLimiter.THREAD_SLEEPER);
+    }
+
+    /**
+     * @param backoff waits out the delays servers ask for before a retry
+     */
+    public CachingHttpClient(RateLimiter limiter, ResponseCache cache, RateLimiter.Sleeper backoff) {
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        this.limiter = limiter;
+        this.cache = cache;
+        this.backoff = backoff;
+    }
+
+    /**
+     * A response status and body.
+     */
+    public static class Response {
+        public final int status;
+        public final byte[] body;
+        /** whether the body came from the cache, with or without asking the server */
+        public final boolean cached;
+
+        public Response(int status, byte[] body, boolean cached) {
+            this.status = status;
+            this.body = body;
+            this.cached = cached;
+        }
+    }
+
+    /**
+     * @param maxAgeMillis how old a cached response may be before it is revalidated, or {@link Long#MAX_VALUE} to
+     *                     never revalidate it
+     */
+    public Response get(String url, long maxAgeMillis) throws IOException, InterruptedException {
+        ResponseCache.Entry entry = cache.get(url);
+        if (entry != null && System.currentTimeMillis() - entry.checked <= maxAgeMillis) {
+            return new Response(200, cache.read(entry), true);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(60))
+                .header("User-Agent", USER_AGENT)
+                .GET();
+        if (entry != null && entry.etag != null) builder.header("If-None-Match", entry.etag);
+        if (entry != null && entry.lastModified != null) builder.header("If-Modified-Since", entry.lastModified);
+        HttpRequest request = builder.build();
+
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            int status = response.statusCode();
+            if (status == 304 && entry != null) {
+                cache.touch(entry);
+                return new Response(200, cache.read(entry), true);
+            } else if (status == 200) {
+                Optional<String> etag = response.headers().firstValue("ETag");
+                Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+                cache.put(url, response.body(), etag.orElse(null), lastModified.orElse(null));
+                return new Response(status, response.body(), false);
+            } else if ((status == 420 || status == 429 || status == 503) && attempt < MAX_ATTEMPTS) {
+                limiter.drain();
+                backoff.sleep(TimeUnit.MILLISECONDS.toNanos(retryAfter(response) * attempt));
+            } else {
+                return new Response(status, response.body(), false);
+            }
+        }
+    }
+
+    private static long retryAfter(HttpResponse<?> response) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (header.isPresent()) {
+            try {
+                return Math.max(1, Long.parseLong(header.get().trim())) * 1000;
+            } catch (NumberFormatException e) {
+                // an HTTP date, which isn't worth parsing for a backoff
+            }
+        }
+        return DEFAULT_BACKOFF_MILLIS;
+    }
+}
@@ -0,0 +1,587 @@
+package io.github.lexikiq.vistest.collector;
+
+import io.github.lexikiq.vistest.RunsLogReader;
+import io.github.lexikiq.vistest.RunsLogWriter;
+import io.github.lexikiq.vistest.VisApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the history of speedrun.com leaderboards into a sketch's runs.csv and metadata.json, along with the
+ * avatars, flags and game cover the renderer shows. This is the Java counterpart of {@code scripts/src-collector.py}
+ * and writes the same files, but takes its choices as options instead of prompting for them.
+ * <p>
+ * Requests run on a pool of threads: pages of runs are fetched several at a time (speculatively, as the API doesn't
+ * say how many there are) and every image is downloaded in parallel, while a shared {@link RateLimiter} keeps the
+ * whole collector within the API's limits. Every response goes through a {@link ResponseCache}, so collecting a
+ * category again only downloads the pages that changed, and images are never downloaded twice.
+ */
+public class LeaderboardCollector {
+    public static final String DEFAULT_API = "https://www.speedrun.com/api/v1/";
+    public static final String DEFAULT_SITE = "https://www.speedrun.com/";
+    /** countryflags.io, which the Python collector used, is gone */
+    public static final String DEFAULT_FLAGS = "https://flagcdn.com/64x48/{code}.png";
+    private static final String BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+    /** base URLs, which can point at a local server instead */
+    public String api = DEFAULT_API;
+    public String site = DEFAULT_SITE;
+    /** the URL of a flag, with "{code}" standing in for the country code */
+    public String flagUrl = DEFAULT_FLAGS;
+    /** how many runs to request at once (the API allows up to 200) */
+    public int pageSize = 200;
+    /** the ID or abbreviation of the game */
+    public String game;
+    /** names or IDs of the categories to collect, or empty for the first one */
+    public List<String> categories = new ArrayList<String>();
+    /** the category name shown at the top of the screen, or null for the first category's name */
+    public String title;
+    /** labels of the subcategory values to keep, or null to keep all of them */
+    public Set<String> allowedValues;
+    /** how many of the top runners of every day to download avatars for */
+    public int avatars = 10;
+    /** whether to use multi-category mode, or null to use it when there are several categories or subcategories */
+    public Boolean multi;
+    public boolean milli = true;
+    /** how long API responses are used without asking the server whether they changed */
+    public long maxAgeMillis = 0;
+    /** if positive, the runs are written as an event log with a snapshot this many days apart instead of runs.csv */
+    public int logSnapshotDays = 0;
+
+    private final File sketchFolder;
+    private final CachingHttpClient http;
+    private final int threads;
+    private final ExecutorService executor;
+
+    public LeaderboardCollector(File sketchFolder, CachingHttpClient http, int threads) {
+        this.sketchFolder = sketchFolder;
+        this.http = http;
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A verified run, as the Python collector's {@code Speedrun}.
+     */
+    private static class Submission {
+        final String id;
+        final Number time;
+        final JSONArray authors;
+        final String authorUUID;
+        final LocalDate performed;
+        final JSONObject metadata;
+
+        Submission(String id, Number time, JSONArray authors, String authorUUID, LocalDate performed, JSONObject metadata) {
+            this.id = id;
+            this.time = time;
+            this.authors = authors;
+            this.authorUUID = authorUUID;
+            this.performed = performed;
+            this.metadata = metadata;
+        }
+
+        double getTime() {
+            return time.doubleValue();
+        }
+    }
+
+    /**
+     * Collects everything and writes it into the sketch's data folder.
+     */
+    public void collect() throws IOException, InterruptedException {
+        File dataFolder = new File(sketchFolder, "data");
+        File avatarFolder = new File(dataFolder, VisApplet.IMAGE_FOLDER);
+        File flagFolder = VisApplet.getFlagFolder(sketchFolder);
+        Files.createDirectories(avatarFolder.toPath());
+        Files.createDirectories(flagFolder.toPath());
+
+        JSONObject gameData = (JSONObject) fetch("games/" + encode(game), "");
+        JSONArray categoryData = (JSONArray) fetch("games/" + encode(gameData.getString("id")) + "/categories", "embed=variables");
+        List<JSONObject> perGame = new ArrayList<JSONObject>();
+        for (int i = 0; i < categoryData.size(); i++) {
+            JSONObject category = categoryData.getJSONObject(i);
+            if (category.getString("type").equals("per-game")) perGame.add(category);
+        }
+        if (perGame.isEmpty()) throw new IOException("No categories found");
+        List<JSONObject> selected = selectCategories(perGame);
+
+        // labels of the values of every subcategory, in the order the game lists its variables
+        List<String> subcategories = new ArrayList<String>();
+        Map<String, String> valueLabels = new LinkedHashMap<String, String>();
+        for (JSONObject category : perGame) {
+            JSONArray variables = category.getJSONObject("variables").getJSONArray("data");
+            for (int i = 0; i < variables.size(); i++) {
+                JSONObject variable = variables.getJSONObject(i);
+                if (!variable.getBoolean("mandatory") || !variable.getBoolean("is-subcategory") || variable.getBoolean("user-defined")) continue;
+                if (!subcategories.contains(variable.getString("id"))) subcategories.add(variable.getString("id"));
+                JSONObject values = variable.getJSONObject("values").getJSONObject("values");
+                for (Object value : values.keys()) {
+                    valueLabels.put((String) value, values.getJSONObject((String) value).getString("label"));
+                }
+            }
+        }
+        Set<String> blacklist = new HashSet<String>();
+        if (allowedValues != null && valueLabels.size() > 1) {
+            for (Map.Entry<String, String> value : valueLabels.entrySet()) {
+                if (!allowedValues.contains(value.getValue())) blacklist.add(value.getKey());
+            }
+        }
+        boolean multiCategory = selected.size() > 1 || valueLabels.isEmpty();
+        String categoryName = title != null ? title : selected.get(0).getString("name");
+
+        System.out.println("Fetching runs of " + gameData.getJSONObject("names").getString("international"));
+        List<JSONObject> rawRuns = new ArrayList<JSONObject>();
+        for (JSONObject category : selected) {
+            rawRuns.addAll(fetchRuns(category));
+        }
+
+        // every author's flag is wanted, even for runs that end up discarded (as in the Python collector)
+        Set<String> countries = new LinkedHashSet<String>();
+        List<Submission> submissions = new ArrayList<Submission>();
+        for (JSONObject run : rawRuns) {
+            Submission submission = toSubmission(run, subcategories, valueLabels, blacklist, multiCategory, countries);
+            if (submission.performed != null) submissions.add(submission);
+        }
+        if (submissions.isEmpty()) throw new IOException("No runs found");
+        submissions.sort(Comparator.comparing(s -> s.performed));
+
+        Map<String, JSONArray> runners = new LinkedHashMap<String, JSONArray>();
+        for (Submission submission : submissions) {
+            for (int i = 0; i < submission.authors.size(); i++) {
+                JSONObject author = submission.authors.getJSONObject(i);
+                author.remove("links");
+                if (author.getString("rel").equals("user")) {
+                    author.remove("role");
+                    author.remove("signup");
+                }
+            }
+            runners.put(submission.authorUUID, submission.authors);
+        }
+
+        // images download while the table is written
+        Future<Boolean> cover = executor.submit(() -> {
+            String url = gameData.getJSONObject("assets").getJSONObject("cover-large").getString("uri", null);
+            return url != null && download(url, new File(avatarFolder, "_cover.png"));
+        });
+        Map<String, Future<Boolean>> flags = new LinkedHashMap<String, Future<Boolean>>();
+        for (String country : countries) {
+            flags.put(country, executor.submit(() -> downloadFlag(country, flagFolder)));
+        }
+
+        File runsFile = new File(dataFolder, logSnapshotDays > 0 ? RunsLogReader.FILE_NAME : "runs.csv");
+        System.out.println("Writing " + runsFile.getName());
+        JSONObject runData = new JSONObject();
+        List<Submission> avatarCandidates = writeTable(submissions, new ArrayList<String>(runners.keySet()), runsFile, runData);
+
+        JSONArray pfps = new JSONArray();
+        if (avatars > 0) {
+            System.out.println("Downloading avatars");
+            List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+            for (Submission submission : avatarCandidates) {
+                tasks.add(() -> downloadAvatar(submission, avatarFolder));
+            }
+            List<Boolean> downloaded = invokeAll(tasks);
+            for (int i = 0; i < downloaded.size(); i++) {
+                if (downloaded.get(i)) pfps.append(avatarCandidates.get(i).authorUUID);
+            }
+        }
+        JSONArray flagCodes = new JSONArray();
+        for (Map.Entry<String, Future<Boolean>> flag : flags.entrySet()) {
+            if (get(flag.getValue())) flagCodes.append(flag.getKey());
+        }
+
+        System.out.println("Writing metadata.json");
+        JSONObject players = new JSONObject();
+        for (Map.Entry<String, JSONArray> runner : runners.entrySet()) {
+            players.setJSONArray(runner.getKey(), runner.getValue());
+        }
+        JSONObject metadata = new JSONObject();
+        metadata.setString("game", gameData.getJSONObject("names").getString("international"));
+        metadata.setString("category", categoryName);
+        metadata.setJSONObject("runs", runData);
+        metadata.setJSONObject("players", players);
+        metadata.setJSONArray("pfps", pfps);
+        metadata.setBoolean("cover", get(cover));
+        metadata.setJSONArray("flags", flagCodes);
+        metadata.setBoolean("multi", multi != null ? multi : selected.size() > 1 || !valueLabels.isEmpty());
+        metadata.setBoolean("milli", milli);
+        if (!metadata.save(new File(dataFolder, "metadata.json"), "compact")) throw new IOException("Could not write metadata.json");
+    }
+
+    private List<JSONObject> selectCategories(List<JSONObject> perGame) throws IOException {
+        if (categories.isEmpty()) return Collections.singletonList(perGame.get(0));
+        List<JSONObject> selected = new ArrayList<JSONObject>();
+        for (String wanted : categories) {
+            JSONObject match = null;
+            for (JSONObject category : perGame) {
+                if (category.getString("id").equals(wanted) || category.getString("name").equalsIgnoreCase(wanted)) {
+                    match = category;
+                    break;
+                }
+            }
+            if (match == null) throw new IOException("Unknown category " + wanted);
+            selected.add(match);
+        }
+        return selected;
+    }
+
+    /**
+     * Fetches every verified run of a category. Pages are requested in growing batches (up to one per thread) until
+     * one comes back short, so small categories don't waste requests and large ones are fetched in parallel.
+     */
+    private List<JSONObject> fetchRuns(JSONObject category) throws IOException, InterruptedException {
+        String categoryId = category.getString("id");
+        List<JSONObject> runs = new ArrayList<JSONObject>();
+        int offset = 0;
+        for (int batch = 1; ; batch = Math.min(batch*2, threads)) {
+            List<Callable<JSONArray>> pages = new ArrayList<Callable<JSONArray>>();
+            for (int i = 0; i < batch; i++) {
+                String query = "category=" + encode(categoryId) + "&status=verified&max=" + pageSize
+                        + "&offset=" + (offset + i*pageSize) + "&embed=players,platform,region";
+                pages.add(() -> (JSONArray) fetch("runs", query));
+            }
+            offset += batch*pageSize;
+            for (JSONArray page : invokeAll(pages)) {
+                for (int i = 0; i < page.size(); i++) {
+                    JSONObject run = page.getJSONObject(i);
+                    run.setString("category_name", category.getString("name"));
+                    runs.add(run);
+                }
+                if (page.size() < pageSize) return runs;
+            }
+        }
+    }
+
+    private static Submission toSubmission(JSONObject run, List<String> subcategories, Map<String, String> valueLabels,
+                                           Set<String> blacklist, boolean multiCategory, Set<String> countries) {
+        Number time = (Number) run.getJSONObject("times").get("primary_t");
+        JSONArray authors = run.getJSONObject("players").getJSONArray("data");
+        String[] ids = new String[authors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            JSONObject author = authors.getJSONObject(i);
+            ids[i] = getUUID(author);
+            if (author.hasKey("location") && !author.isNull("location")) {
+                countries.add(author.getJSONObject("location").getJSONObject("country").getString("code"));
+            }
+        }
+        Arrays.sort(ids);
+
+        JSONObject values = run.hasKey("values") && !run.isNull("values") ? run.getJSONObject("values") : new JSONObject();
+        LocalDate performed = null;
+        boolean blacklisted = false;
+        for (Object variable : values.keys()) {
+            if (blacklist.contains(values.getString((String) variable))) blacklisted = true;
+        }
+        // blacklisted runs never get a date, which discards them
+        if (blacklisted) {
+            performed = null;
+        } else if (!run.isNull("date")) {
+            performed = LocalDate.parse(run.getString("date"));
+        } else if (!run.isNull("submitted")) {
+            performed = LocalDate.parse(run.getString("submitted").substring(0, 10));
+        } else if (!run.getJSONObject("status").isNull("verify-date")) {
+            performed = LocalDate.parse(run.getJSONObject("status").getString("verify-date").substring(0, 10));
+        }
+
+        List<String> names = new ArrayList<String>();
+        if (multiCategory) names.add(run.getString("category_name"));
+        for (String variable : subcategories) {
+            String label = valueLabels.get(values.getString(variable, null));
+            if (label != null) names.add(label);
+        }
+
+        JSONObject metadata = new JSONObject();
+        metadata.setString("time", humanTime(time.doubleValue()));
+        metadata.put("time_t", time);
+        metadata.put("comment", run.hasKey("comment") && !run.isNull("comment") ? run.getString("comment") : JSONObject.NULL);
+        metadata.put("region", embeddedName(run, "region"));
+        metadata.put("platform", embeddedName(run, "platform"));
+        metadata.setBoolean("emulated", run.getJSONObject("system").getBoolean("emulated"));
+        metadata.setString("category", String.join("/", names));
+        return new Submission(run.getString("id"), time, authors, String.join("", ids), performed, metadata);
+    }
+
+    /**
+     * Writes the table of every runner's best run on every day, from the first run to the last (or, with
+     * {@link #logSnapshotDays}, only the changes to it). A run only replaces a runner's previous one if it's at least
+     * as fast.
+     *
+     * @param runData receives the metadata of every run in the table
+     * @return the first run of every runner that was ever among the top {@link #avatars} of a day, in the order they
+     *         got there
+     */
+    private List<Submission> writeTable(List<Submission> submissions, List<String> runnerIDs, File file,
+                                        JSONObject runData) throws IOException {
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        for (int i = 0; i < runnerIDs.size(); i++) columns.put(runnerIDs.get(i), i);
+        Submission[] best = new Submission[runnerIDs.size()];
+        // runners with a run, fastest first (ties in column order, like the Python collector's stable sort)
+        TreeSet<Integer> standings = new TreeSet<Integer>(
+                Comparator.<Integer>comparingDouble(c -> best[c].getTime()).thenComparingInt(c -> c));
+        Map<String, Submission> avatarCandidates = new LinkedHashMap<String, Submission>();
+
+        String[] header = new String[runnerIDs.size()+1];
+        header[0] = "date";
+        for (int i = 0; i < runnerIDs.size(); i++) header[i+1] = runnerIDs.get(i);
+        try (RunsLogWriter log = logSnapshotDays > 0 ? new RunsLogWriter(file, header, logSnapshotDays) : null;
+             Writer out = log != null ? null : new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+            if (out != null) {
+                out.write(String.join(",", header));
+                out.write("\r\n");
+            }
+
+            int next = 0;
+            LocalDate lastDay = submissions.get(submissions.size()-1).performed;
+            for (LocalDate day = submissions.get(0).performed; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                if (log != null) log.day(day);
+                for (; next < submissions.size() && !submissions.get(next).performed.isAfter(day); next++) {
+                    Submission run = submissions.get(next);
+                    int column = columns.get(run.authorUUID);
+                    if (best[column] != null && best[column].getTime() < run.getTime()) continue;
+                    if (best[column] != null) standings.remove(column);
+                    best[column] = run;
+                    standings.add(column);
+                    runData.setJSONObject(run.id, run.metadata);
+                    if (log != null) log.set(column+1, run.id);
+                }
+
+                if (out != null) {
+                    out.write(day.toString());
+                    for (Submission run : best) {
+                        out.write(',');
+                        if (run != null) out.write(run.id);
+                    }
+                    out.write("\r\n");
+                }
+
+                Iterator<Integer> top = standings.iterator();
+                for (int i = 0; i < avatars && top.hasNext(); i++) {
+                    Submission run = best[top.next()];
+                    avatarCandidates.putIfAbsent(run.authorUUID, run);
+                }
+            }
+        }
+        return new ArrayList<Submission>(avatarCandidates.values());
+    }
+
+    private boolean downloadAvatar(Submission run, File avatarFolder) throws IOException, InterruptedException {
+        if (run.authors.size() != 1) return false;
+        JSONObject author = run.authors.getJSONObject(0);
+        if (!author.hasKey("weblink")) return false;
+        File dest = new File(avatarFolder, run.authorUUID + ".png");
+        if (dest.exists()) return true;
+
+        List<String> urls = new ArrayList<String>();
+        if (author.hasKey("assets") && !author.getJSONObject("assets").isNull("image")) {
+            String uri = author.getJSONObject("assets").getJSONObject("image").getString("uri", null);
+            if (uri != null) urls.add(uri);
+        }
+        String weblink = author.getString("weblink");
+        urls.add(site + "themes/user/" + weblink.substring(weblink.lastIndexOf('/')+1) + "/image.png?version=");
+        for (String url : urls) {
+            if (download(url, dest)) return true;
+        }
+        return false;
+    }
+
+    private boolean downloadFlag(String country, File flagFolder) throws IOException, InterruptedException {
+        File dest = new File(flagFolder, country + ".png");
+        if (dest.exists()) return true;
+        Files.createDirectories(dest.getParentFile().toPath());
+        return download(flagUrl.replace("{code}", country.replace('/', '-')), dest);
+    }
+
+    /**
+     * Downloads an image, which is assumed to never change once cached.
+     *
+     * @return whether the server had it
+     */
+    private boolean download(String url, File dest) throws IOException, InterruptedException {
+        CachingHttpClient.Response response = http.get(url, Long.MAX_VALUE);
+        if (response.status != 200) return false;
+        Files.write(dest.toPath(), response.body);
+        return true;
+    }
+
+    /**
+     * @return the "data" of an API response
+     */
+    private Object fetch(String path, String query) throws IOException, InterruptedException {
+        String url = api + path + (query.isEmpty() ? "" : "?" + query);
+        CachingHttpClient.Response response = http.get(url, maxAgeMillis);
+        String body = new String(response.body, StandardCharsets.UTF_8);
+        if (response.status != 200) {
+            String message = "";
+            try {
+                message = JSONObject.parse(body).getString("message", "");
+            } catch (RuntimeException e) {
+                // not JSON, i.e. a proxy's error page
+            }
+            throw new IOException(url + " returned " + response.status + (message.isEmpty() ? "" : ": " + message));
+        }
+        return JSONObject.parse(body).get("data");
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, InterruptedException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the ID of a player in runner UUIDs: a user's ID followed by "-", or a hash of a guest's name followed by "_"
+     */
+    public static String getUUID(JSONObject player) {
+        if (player.getString("rel").equals("user")) return player.getString("id") + "-";
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(player.getString("name").getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        // the first 8 base32 characters are the first 40 bits of the digest
+        long bits = 0;
+        for (int i = 0; i < 5; i++) bits = (bits << 8) | (digest[i] & 0xFF);
+        char[] id = new char[9];
+        for (int i = 0; i < 8; i++) {
+            char c = Character.toLowerCase(BASE32.charAt((int) (bits >>> (35 - i*5)) & 0x1F));
+            id[i] = c == 'i' ? '8' : c;
+        }
+        id[8] = '_';
+        return new String(id);
+    }
+
+    /**
+     * @return the time like "1:02:03.456", as Python formats it
+     */
+    static String humanTime(double time) {
+        int h = (int) (time/60/60);
+        int m = (int) (time/60 % 60);
+        // Python rounds the exact value of the double half to even
+        String s = new BigDecimal(time % 60).setScale(3, RoundingMode.HALF_EVEN).toPlainString();
+        StringBuilder out = new StringBuilder().append(h).append(':');
+        if (m < 10) out.append('0');
+        out.append(m).append(':');
+        for (int i = s.length(); i < 6; i++) out.append('0');
+        return out.append(s).toString();
+    }
+
+    private static Object embeddedName(JSONObject run, String key) {
+        Object data = run.getJSONObject(key).get("data");
+        return data instanceof JSONObject ? ((JSONObject) data).getString("name") : JSONObject.NULL;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects a game's leaderboards into the sketch in the working directory.
+     * <p>
+     * Options: {@code --game=ID} (an ID or abbreviation, required), {@code --categories=A,B} (names or IDs, defaults to
+     * the first category), {@code --title=NAME}, {@code --values=A,B} (the subcategory values to keep, defaults to all),
+     * {@code --avatars=N} (defaults to 10), {@code --multi=true|false}, {@code --milli=true|false}.
+     * <p>
+     * {@code --threads=N} (defaults to 8), {@code --rate=N} (requests a minute, defaults to 100), {@code --cache=FOLDER}
+     * (defaults to "collector-cache"), {@code --max-age=SECONDS} (how long API responses are used without
+     * revalidating them, defaults to 0), {@code --log=DAYS} (writes runs_log.csv with a snapshot every DAYS days
+     * instead of runs.csv). {@code --api=URL}, {@code --site=URL} and {@code --flags=URL} replace the
+     * servers, i.e. with a local one.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = 8;
+        int rate = 100;
+        File cacheFolder = new File("collector-cache");
+        List<String[]> options = new ArrayList<String[]>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split == -1) throw new IllegalArgumentException("Unknown argument " + arg);
+            options.add(new String[]{arg.substring(2, split), arg.substring(split+1)});
+        }
+        for (String[] option : options) {
+            if (option[0].equals("threads")) threads = Integer.parseInt(option[1]);
+            else if (option[0].equals("rate")) rate = Integer.parseInt(option[1]);
+            else if (option[0].equals("cache")) cacheFolder = new File(option[1]);
+        }
+
+        CachingHttpClient http = new CachingHttpClient(new RateLimiter(rate, Math.max(threads, 1)), new ResponseCache(cacheFolder));
+        LeaderboardCollector collector = new LeaderboardCollector(new File("."), http, threads);
+        for (String[] option : options) {
+            String value = option[1];
+            switch (option[0]) {
+                case "threads": case "rate": case "cache": break;
+                case "game": collector.game = value; break;
+                case "categories": collector.categories = Arrays.asList(value.split(",")); break;
+                case "title": collector.title = value; break;
+                case "values": collector.allowedValues = new HashSet<String>(Arrays.asList(value.split(","))); break;
+                case "avatars": collector.avatars = Integer.parseInt(value); break;
+                case "multi": collector.multi = Boolean.parseBoolean(value); break;
+                case "milli": collector.milli = Boolean.parseBoolean(value); break;
+                case "max-age": collector.maxAgeMillis = Long.parseLong(value) * 1000; break;
+                case "log": collector.logSnapshotDays = Integer.parseInt(value); break;
+                case "api": collector.api = value; break;
+                case "site": collector.site = value; break;
+                case "flags": collector.flagUrl = value; break;
+                default: throw new IllegalArgumentException("Unknown option --" + option[0]);
+            }
+        }
+        if (collector.game == null) throw new IllegalArgumentException("--game is required");
+
+        try {
+            collector.collect();
+        } finally {
+            collector.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.lexikiq.vistest.collector;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket shared by every thread of a collector.
+ * <p>
+ * The bucket holds up to {@code burst} tokens and refills at {@code perMinute} tokens a minute; every request takes
+ * one, waiting for the next refill once the bucket is empty. speedrun.com allows 100 requests a minute.
+ */
+public class RateLimiter {
+    /** sleeps on the calling thread */
+    public static final Sleeper THREAD_SLEEPER = nanos -> Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final LongSupplier clock;
+    private final Sleeper sleeper;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Waits for a while, i.e. until the next token or for a server's backoff.
+     */
+    public interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    public RateLimiter(int perMinute, int burst) {
+        this(perMinute, burst, System::nanoTime, THREAD_SLEEPER);
+    }
+
+    /**
+     * @param clock the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    public RateLimiter(int perMinute, int burst, LongSupplier clock, Sleeper sleeper) {
+        if (perMinute <= 0 || burst <= 0) throw new IllegalArgumentException("Rate and burst must be positive");
+        this.tokensPerNano = perMinute / 60e9;
+        this.burst = burst;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token, blocking until one is available.
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            refill();
+            tokens--;
+            // a negative balance is a reservation: this caller owns the token that refills next
+            wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+        if (wait > 0) sleeper.sleep(wait);
+    }
+
+    /**
+     * Empties the bucket, i.e. after the server asked us to back off.
+     */
+    public synchronized void drain() {
+        refill();
+        tokens = Math.min(tokens, 0);
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.lexikiq.vistest.collector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Content-addressed on-disk cache of HTTP responses.
+ * <p>
+ * Bodies are stored once under {@code objects/} by the SHA-256 of their contents, and each URL gets a small entry under
+ * {@code urls/} pointing at its body along with the validators (ETag, Last-Modified) to revalidate it with. Pages that
+ * didn't change come back as a 304 without a body, and identical bodies (i.e. the same avatar under two URLs) are only
+ * stored once. Files are written to a temporary name and moved into place, so the cache can be shared between threads
+ * and survives an interrupted collection.
+ */
+public class ResponseCache {
+    private final File objectFolder;
+    private final File urlFolder;
+
+    public ResponseCache(File folder) throws IOException {
+        objectFolder = new File(folder, "objects");
+        urlFolder = new File(folder, "urls");
+        Files.createDirectories(objectFolder.toPath());
+        Files.createDirectories(urlFolder.toPath());
+    }
+
+    /**
+     * A cached response to a URL.
+     */
+    public static class Entry {
+        public final String url;
+        public final String hash;
+        public final String etag;
+        public final String lastModified;
+        /** when the body was last confirmed to be current, in milliseconds since the epoch */
+        public final long checked;
+
+        public Entry(String url, String hash, String etag, String lastModified, long checked) {
+            this.url = url;
+            this.hash = hash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.checked = checked;
+        }
+    }
+
+    /**
+     * @return the cached entry of the URL, or null if it was never cached (or its body is gone)
+     */
+    public Entry get(String url) throws IOException {
+        File file = urlFile(url);
+        if (!file.isFile()) return null;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+        String hash = properties.getProperty("hash");
+        // a hash collision on the URL is as likely as one on the body, but costs nothing to rule out
+        if (hash == null || !url.equals(properties.getProperty("url")) || !objectFile(hash).isFile()) return null;
+        return new Entry(url, hash, properties.getProperty("etag"), properties.getProperty("last-modified"),
+                Long.parseLong(properties.getProperty("checked", "0")));
+    }
+
+    public byte[] read(Entry entry) throws IOException {
+        return Files.readAllBytes(objectFile(entry.hash).toPath());
+    }
+
+    /**
+     * Stores a response body and points the URL at it.
+     */
+    public Entry put(String url, byte[] body, String etag, String lastModified) throws IOException {
+        String hash = sha256(body);
+        File object = objectFile(hash);
+        if (!object.isFile()) {
+            Files.createDirectories(object.getParentFile().toPath());
+            write(object, body);
+        }
+        return touch(new Entry(url, hash, etag, lastModified, System.currentTimeMillis()));
+    }
+
+    /**
+     * Marks a cached body as current again, i.e. after the server answered 304 Not Modified.
+     */
+    public Entry touch(Entry entry) throws IOException {
+        Entry touched = new Entry(entry.url, entry.hash, entry.etag, entry.lastModified, System.currentTimeMillis());
+        Properties properties = new Properties();
+        properties.setProperty("url", touched.url);
+        properties.setProperty("hash", touched.hash);
+        if (touched.etag != null) properties.setProperty("etag", touched.etag);
+        if (touched.lastModified != null) properties.setProperty("last-modified", touched.lastModified);
+        properties.setProperty("checked", Long.toString(touched.checked));
+        File file = urlFile(entry.url);
+        File temp = File.createTempFile(file.getName(), ".tmp", urlFolder);
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            properties.store(out, null);
+        }
+        move(temp.toPath(), file.toPath());
+        return touched;
+    }
+
+    private File urlFile(String url) {
+        return new File(urlFolder, sha256(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private File objectFile(String hash) {
+        return new File(new File(objectFolder, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        Files.write(temp.toPath(), data);
+        move(temp.toPath(), file.toPath());
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
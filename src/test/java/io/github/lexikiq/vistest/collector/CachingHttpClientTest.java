@@ -0,0 +1,218 @@
+package io.github.lexikiq.vistest.collector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the client against a {@link StubServer}. Backoffs are recorded instead of slept through, and the rate limiter
+ * runs on a clock that only moves when it waits.
+ */
+class CachingHttpClientTest {
+    private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3};
+
+    @TempDir
+    File cacheFolder;
+    private StubServer server;
+    private ResponseCache cache;
+    private CachingHttpClient http;
+    private long now = 0;
+    private final List<Long> limiterWaits = new ArrayList<Long>();
+    private final List<Long> backoffs = new ArrayList<Long>(); // in milliseconds
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new StubServer();
+        cache = new ResponseCache(cacheFolder);
+        // a token every 10ms, with a bucket too large to run dry unless it's drained
+        RateLimiter limiter = new RateLimiter(6000, 100, () -> now, nanos -> {
+            limiterWaits.add(nanos);
+            now += nanos;
+        });
+        http = new CachingHttpClient(limiter, cache, nanos -> backoffs.add(TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private static String text(CachingHttpClient.Response response) {
+        return new String(response.body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serves a page with an ETag, answering requests that already have it with a 304.
+     */
+    private void routePage(String path, String[] body, String[] etag) {
+        server.route(path, (exchange, count) -> {
+            if (etag[0].equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                StubServer.send(exchange, 304, (byte[]) null);
+            } else {
+                exchange.getResponseHeaders().set("ETag", etag[0]);
+                StubServer.send(exchange, 200, body[0]);
+            }
+        });
+    }
+
+    @Test
+    void freshResponsesSkipTheServer() throws Exception {
+        routePage("/page", new String[]{"{\"data\":[1]}"}, new String[]{"\"v1\""});
+        CachingHttpClient.Response response = http.get(server.url("/page"), 0);
+        assertEquals(200, response.status);
+        assertFalse(response.cached);
+        assertEquals("{\"data\":[1]}", text(response));
+
+        response = http.get(server.url("/page"), Long.MAX_VALUE);
+        assertTrue(response.cached);
+        assertEquals("{\"data\":[1]}", text(response));
+        assertEquals(1, server.requests("/page"));
+    }
+
+    @Test
+    void revalidatesWithETag() throws Exception {
+        String[] body = {"{\"data\":[1]}"};
+        String[] etag = {"\"v1\""};
+        routePage("/page", body, etag);
+        http.get(server.url("/page"), 0);
+
+        CachingHttpClient.Response response = http.get(server.url("/page"), 0);
+        assertEquals("\"v1\"", server.lastHeaders("/page").getFirst("If-None-Match"));
+        assertEquals(200, response.status);
+        assertTrue(response.cached);
+        assertEquals(body[0], text(response));
+        assertEquals(2, server.requests("/page"));
+
+        body[0] = "{\"data\":[1,2]}";
+        etag[0] = "\"v2\"";
+        response = http.get(server.url("/page"), 0);
+        assertFalse(response.cached);
+        assertEquals(body[0], text(response));
+        response = http.get(server.url("/page"), 0);
+        assertEquals("\"v2\"", server.lastHeaders("/page").getFirst("If-None-Match"));
+        assertTrue(response.cached);
+        assertEquals(body[0], text(response));
+    }
+
+    @Test
+    void revalidatesWithLastModified() throws Exception {
+        String lastModified = "Fri, 01 Jan 2021 00:00:00 GMT";
+        server.route("/dated", (exchange, count) -> {
+            if (exchange.getRequestHeaders().containsKey("If-Modified-Since")) {
+                StubServer.send(exchange, 304, (byte[]) null);
+            } else {
+                exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                StubServer.send(exchange, 200, "dated");
+            }
+        });
+        http.get(server.url("/dated"), 0);
+        CachingHttpClient.Response response = http.get(server.url("/dated"), 0);
+        assertEquals(lastModified, server.lastHeaders("/dated").getFirst("If-Modified-Since"));
+        assertNull(server.lastHeaders("/dated").getFirst("If-None-Match"));
+        assertTrue(response.cached);
+        assertEquals("dated", text(response));
+    }
+
+    @Test
+    void doesNotCacheErrors() throws Exception {
+        CachingHttpClient.Response response = http.get(server.url("/missing"), Long.MAX_VALUE);
+        assertEquals(404, response.status);
+        assertFalse(response.cached);
+        http.get(server.url("/missing"), Long.MAX_VALUE);
+        assertEquals(2, server.requests("/missing"));
+        assertNull(cache.get(server.url("/missing")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {420, 429, 503})
+    void backsOffWhenAskedTo(int status) throws Exception {
+        server.route("/busy", (exchange, count) -> {
+            if (count == 1) {
+                exchange.getResponseHeaders().set("Retry-After", "2");
+                StubServer.send(exchange, status, (byte[]) null);
+            } else {
+                StubServer.send(exchange, 200, "done");
+            }
+        });
+        CachingHttpClient.Response response = http.get(server.url("/busy"), 0);
+        assertEquals(200, response.status);
+        assertEquals("done", text(response));
+        assertEquals(2, server.requests("/busy"));
+        assertEquals(Collections.singletonList(2000L), backoffs);
+        // the retry also waited for the rate limiter, which was drained
+        assertEquals(1, limiterWaits.size());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), limiterWaits.get(0), 1);
+    }
+
+    @Test
+    void givesUpAfterRepeatedBackoffs() throws Exception {
+        // without a usable Retry-After, the client waits 5 seconds times the attempt
+        server.route("/down", (exchange, count) -> {
+            exchange.getResponseHeaders().set("Retry-After", "Fri, 01 Jan 2021 00:00:00 GMT");
+            StubServer.send(exchange, 503, "down");
+        });
+        CachingHttpClient.Response response = http.get(server.url("/down"), 0);
+        assertEquals(503, response.status);
+        assertEquals("down", text(response));
+        assertEquals(5, server.requests("/down"));
+        assertEquals(Arrays.asList(5000L, 10000L, 15000L, 20000L), backoffs);
+    }
+
+    @Test
+    void storesIdenticalBodiesOnce() throws Exception {
+        server.route("/a.png", (exchange, count) -> StubServer.send(exchange, 200, IMAGE));
+        server.route("/b.png", (exchange, count) -> StubServer.send(exchange, 200, IMAGE));
+        http.get(server.url("/a.png"), Long.MAX_VALUE);
+        http.get(server.url("/b.png"), Long.MAX_VALUE);
+
+        ResponseCache.Entry a = cache.get(server.url("/a.png"));
+        ResponseCache.Entry b = cache.get(server.url("/b.png"));
+        assertNotNull(a);
+        assertNotNull(b);
+        String hash = ResponseCache.sha256(IMAGE);
+        assertEquals(hash, a.hash);
+        assertEquals(hash, b.hash);
+        assertArrayEquals(IMAGE, cache.read(b));
+
+        List<Path> objects;
+        try (Stream<Path> files = Files.walk(new File(cacheFolder, "objects").toPath())) {
+            objects = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        assertEquals(Collections.singletonList(new File(new File(new File(cacheFolder, "objects"), hash.substring(0, 2)), hash.substring(2)).toPath()), objects);
+    }
+
+    @Test
+    void cachedResponsesSurviveANewClient() throws Exception {
+        routePage("/page", new String[]{"{\"data\":[1]}"}, new String[]{"\"v1\""});
+        http.get(server.url("/page"), 0);
+
+        CachingHttpClient other = new CachingHttpClient(new RateLimiter(6000, 100), new ResponseCache(cacheFolder));
+        CachingHttpClient.Response response = other.get(server.url("/page"), Long.MAX_VALUE);
+        assertTrue(response.cached);
+        assertEquals("{\"data\":[1]}", text(response));
+        assertEquals(1, server.requests("/page"));
+    }
+}
@@ -0,0 +1,293 @@
+package io.github.lexikiq.vistest.collector;
+
+import io.github.lexikiq.vistest.RunsLogReader;
+import io.github.lexikiq.vistest.VisApplet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Collects a small game from a {@link StubServer} standing in for speedrun.com, then compares the output with what
+ * {@code scripts/src-collector.py} wrote for the same responses.
+ * <p>
+ * The stub serves stub-api.json: one category with a subcategory, a per-level category that must be skipped, and
+ * seven runs by two users, a guest, a duo and a user whose avatar only the site has. Runs are fetched two per page, so
+ * they take several (parallel) pages. expected-metadata.json is the Python collector's metadata.json for it, with the
+ * stub's address replaced by {@code {base}}.
+ */
+class LeaderboardCollectorTest {
+    private static final byte[] AVATAR = "\u0089PNG-avatar".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] FLAG = "\u0089PNG-flag".getBytes(StandardCharsets.ISO_8859_1);
+    private static final String HEADER = "date,u1-,u2-,3sktxrpg_,u1-u2-,u3-";
+    private static final String[] ROWS = {
+            "2020-01-01,r1,,,,",
+            "2020-01-02,r1,r2,r3,,",
+            "2020-01-03,r1,r2,r3,r6,",
+            "2020-01-04,r4,r2,r3,r6,",
+            "2020-01-05,r4,r2,r3,r6,r7",
+    };
+
+    @TempDir
+    File folder;
+    private StubServer server;
+    private JSONObject api;
+    private String base;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new StubServer();
+        base = server.url("");
+        api = JSONObject.parse(resource("stub-api.json"));
+        JSONArray runs = api.getJSONArray("runs");
+
+        routeData("/api/v1/games/tst", exchange -> api.getJSONObject("game"));
+        routeData("/api/v1/games/g1/categories", exchange -> api.getJSONArray("categories"));
+        routeData("/api/v1/runs", exchange -> {
+            Map<String, String> query = StubServer.query(exchange);
+            JSONArray page = new JSONArray();
+            if (!query.get("category").equals("catA")) return page;
+            int offset = Integer.parseInt(query.get("offset"));
+            int max = Integer.parseInt(query.get("max"));
+            for (int i = offset; i < Math.min(offset + max, runs.size()); i++) page.append(runs.getJSONObject(i));
+            return page;
+        });
+        for (String path : new String[]{"/img/cover.png", "/img/alice.png", "/themes/user/Dana/image.png"}) {
+            server.route(path, (exchange, count) -> StubServer.send(exchange, 200, AVATAR));
+        }
+        // no flag for jp
+        for (String path : new String[]{"/flags/us.png", "/flags/ca.png"}) {
+            server.route(path, (exchange, count) -> StubServer.send(exchange, 200, FLAG));
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private interface Data {
+        Object get(com.sun.net.httpserver.HttpExchange exchange);
+    }
+
+    /**
+     * Serves API responses like speedrun.com: wrapped in "data", with an ETag to revalidate them with.
+     */
+    private void routeData(String path, Data data) {
+        server.route(path, (exchange, count) -> {
+            Object value = data.get(exchange);
+            String body = "{\"data\":" + (value instanceof JSONObject ? ((JSONObject) value).format(-1) : ((JSONArray) value).format(-1)) + "}";
+            String etag = "\"" + ResponseCache.sha256(body.getBytes(StandardCharsets.UTF_8)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                StubServer.send(exchange, 304, (byte[]) null);
+            } else {
+                StubServer.send(exchange, 200, body);
+            }
+        });
+    }
+
+    private String resource(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("{base}", base);
+        }
+    }
+
+    private LeaderboardCollector collector(File sketchFolder, File cacheFolder) throws IOException {
+        CachingHttpClient http = new CachingHttpClient(new RateLimiter(60_000, 10), new ResponseCache(cacheFolder));
+        LeaderboardCollector collector = new LeaderboardCollector(sketchFolder, http, 2);
+        collector.api = server.url("/api/v1/");
+        collector.site = server.url("/");
+        collector.flagUrl = server.url("/flags/{code}.png");
+        collector.game = "tst";
+        collector.avatars = 2;
+        collector.pageSize = 2;
+        return collector;
+    }
+
+    private static void collect(LeaderboardCollector collector) throws IOException, InterruptedException {
+        try {
+            collector.collect();
+        } finally {
+            collector.shutdown();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void collectsTheSameTableAsThePythonCollector() throws Exception {
+        File sketch = new File(folder, "sketch");
+        collect(collector(sketch, new File(folder, "cache")));
+
+        StringBuilder expected = new StringBuilder(HEADER).append("\r\n");
+        for (String row : ROWS) expected.append(row).append("\r\n");
+        assertEquals(expected.toString(), read(new File(sketch, "data/runs.csv")));
+
+        // pages of two, fetched one and then two at a time until one comes back short
+        List<Integer> offsets = new ArrayList<Integer>();
+        for (Map<String, String> query : server.queries("/api/v1/runs")) {
+            assertEquals("2", query.get("max"));
+            assertEquals("verified", query.get("status"));
+            offsets.add(Integer.parseInt(query.get("offset")));
+        }
+        Collections.sort(offsets);
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), offsets);
+    }
+
+    @Test
+    void writesTheSameMetadataAsThePythonCollector() throws Exception {
+        File sketch = new File(folder, "sketch");
+        collect(collector(sketch, new File(folder, "cache")));
+
+        JSONObject metadata = JSONObject.parse(read(new File(sketch, "data/metadata.json")));
+        JSONObject expected = JSONObject.parse(resource("expected-metadata.json"));
+        for (String key : new String[]{"game", "category", "runs", "players", "cover", "flags", "milli"}) {
+            assertEquals(canonical(expected.get(key)), canonical(metadata.get(key)), key);
+        }
+        // the Python collector writes its subcategory labels here (as they're truthy), which means the same thing
+        assertTrue(metadata.getBoolean("multi"));
+        // Python only knows the site's avatar URL (which Dana has); the API's image is tried first (which Alice has)
+        assertEquals(canonical(expected.getJSONArray("pfps")), "[\"u3-\"]");
+        assertEquals("[\"u1-\",\"u3-\"]", canonical(metadata.getJSONArray("pfps")));
+
+        File avatarFolder = new File(sketch, "data/" + VisApplet.IMAGE_FOLDER);
+        assertEquals(new TreeSet<String>(Arrays.asList("_cover.png", "u1-.png", "u3-.png")),
+                new TreeSet<String>(Arrays.asList(avatarFolder.list())));
+        assertArrayEquals(AVATAR, Files.readAllBytes(new File(avatarFolder, "u1-.png").toPath()));
+        File flagFolder = VisApplet.getFlagFolder(sketch);
+        assertEquals(new TreeSet<String>(Arrays.asList("ca.png", "us.png")), new TreeSet<String>(Arrays.asList(flagFolder.list())));
+        assertArrayEquals(FLAG, Files.readAllBytes(new File(flagFolder, "us.png").toPath()));
+
+        // avatars are only looked for among the top two of a day, and the site's URL only if the API has no image:
+        // Bob's is tried (and missing), Alice's isn't needed
+        assertEquals(1, server.requests("/themes/user/Bob/image.png"));
+        assertEquals(0, server.requests("/themes/user/Alice/image.png"));
+        assertEquals(1, server.requests("/flags/jp.png"));
+    }
+
+    @Test
+    void writesAnEventLog() throws Exception {
+        File sketch = new File(folder, "sketch");
+        LeaderboardCollector collector = collector(sketch, new File(folder, "cache"));
+        collector.logSnapshotDays = 2;
+        collect(collector);
+
+        File logFile = new File(sketch, "data/" + RunsLogReader.FILE_NAME);
+        assertFalse(new File(sketch, "data/runs.csv").exists());
+        assertEquals(HEADER + "\n"
+                + "2020-01-01,1,r1\n"
+                + "2020-01-01,*,r1,,,,\n"
+                + "2020-01-02,2,r2\n"
+                + "2020-01-02,3,r3\n"
+                + "2020-01-03,4,r6\n"
+                + "2020-01-03,*,r1,r2,r3,r6,\n"
+                + "2020-01-04,1,r4\n"
+                + "2020-01-05,5,r7\n"
+                + "2020-01-05,*,r4,r2,r3,r6,r7\n", read(logFile));
+
+        // and it reads back as the same days as runs.csv
+        RunsLogReader reader = new RunsLogReader(logFile);
+        assertEquals(HEADER, String.join(",", reader.getHeader()));
+        List<String> rows = new ArrayList<String>();
+        while (reader.nextDay()) {
+            StringBuilder row = new StringBuilder(String.format("%04d-%02d-%02d", reader.getYear(), reader.getMonth(), reader.getDay()));
+            for (int c = 1; c < reader.getHeader().length; c++) {
+                row.append(',');
+                if (reader.getCell(c) != null) row.append(reader.getCell(c));
+            }
+            rows.add(row.toString());
+        }
+        assertEquals(Arrays.asList(ROWS), rows);
+    }
+
+    @Test
+    void collectingAgainRevalidatesInsteadOfDownloading() throws Exception {
+        File cache = new File(folder, "cache");
+        collect(collector(new File(folder, "first"), cache));
+        int runPages = server.requests("/api/v1/runs");
+        int cover = server.requests("/img/cover.png");
+
+        File sketch = new File(folder, "second");
+        collect(collector(sketch, cache));
+        // API pages are asked for again, but only answered with a 304
+        assertEquals(runPages*2, server.requests("/api/v1/runs"));
+        assertTrue(server.lastHeaders("/api/v1/runs").containsKey("If-None-Match"));
+        // images are never downloaded twice
+        assertEquals(cover, server.requests("/img/cover.png"));
+        assertEquals(1, server.requests("/img/alice.png"));
+        assertEquals(read(new File(folder, "first/data/runs.csv")), read(new File(sketch, "data/runs.csv")));
+        assertTrue(new File(sketch, "data/" + VisApplet.IMAGE_FOLDER + "/u3-.png").isFile());
+
+        // everything that came back is stored once
+        HashSet<String> hashes = new HashSet<String>();
+        for (File prefix : new File(cache, "objects").listFiles()) {
+            for (String rest : prefix.list()) assertTrue(hashes.add(prefix.getName() + rest));
+        }
+        assertTrue(hashes.contains(sha256(AVATAR)));
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static String quote(String value) {
+        String array = new JSONArray().append(value).format(-1);
+        return array.substring(1, array.length()-1);
+    }
+
+    /**
+     * @return JSON with the keys of every object sorted, so objects can be compared regardless of key order
+     */
+    private static String canonical(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            StringBuilder out = new StringBuilder("{");
+            for (Object key : new TreeSet<Object>(object.keys())) {
+                if (out.length() > 1) out.append(',');
+                out.append(quote((String) key)).append(':').append(canonical(object.get((String) key)));
+            }
+            return out.append('}').toString();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            StringBuilder out = new StringBuilder("[");
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) out.append(',');
+                out.append(canonical(array.get(i)));
+            }
+            return out.append(']').toString();
+        } else if (value instanceof String) {
+            return quote((String) value);
+        } else if (value instanceof Number) {
+            // 90 and 90.0 are the same time
+            return new java.math.BigDecimal(value.toString()).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(value);
+    }
+}
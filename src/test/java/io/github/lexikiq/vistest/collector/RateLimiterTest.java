@@ -0,0 +1,120 @@
+package io.github.lexikiq.vistest.collector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the limiter on a fake clock: sleeping moves the clock forward instead of waiting, so every wait can be checked
+ * exactly without the tests taking any time.
+ */
+class RateLimiterTest {
+    private static final long TOKEN = TimeUnit.MILLISECONDS.toNanos(100); // one token at 600 a minute
+
+    private long now = 1_000_000_000L;
+    private final List<Long> waits = Collections.synchronizedList(new ArrayList<Long>());
+
+    private RateLimiter limiter(int perMinute, int burst) {
+        return new RateLimiter(perMinute, burst, () -> now, nanos -> {
+            waits.add(nanos);
+            now += nanos;
+        });
+    }
+
+    private static void assertWait(long expected, long actual) {
+        // the rate is a double, so a wait may be a nanosecond off
+        assertEquals(expected, actual, 1);
+    }
+
+    @Test
+    void burstGoesThroughAtOnce() throws InterruptedException {
+        RateLimiter limiter = limiter(600, 5);
+        for (int i = 0; i < 5; i++) limiter.acquire();
+        assertEquals(Collections.emptyList(), waits);
+    }
+
+    @Test
+    void emptyBucketWaitsForEachRefill() throws InterruptedException {
+        RateLimiter limiter = limiter(600, 5);
+        for (int i = 0; i < 8; i++) limiter.acquire();
+        assertEquals(3, waits.size());
+        for (long wait : waits) assertWait(TOKEN, wait);
+    }
+
+    @Test
+    void refillsWhileIdle() throws InterruptedException {
+        RateLimiter limiter = limiter(600, 5);
+        for (int i = 0; i < 5; i++) limiter.acquire();
+        now += 3*TOKEN;
+        for (int i = 0; i < 3; i++) limiter.acquire();
+        assertEquals(Collections.emptyList(), waits);
+        limiter.acquire();
+        assertEquals(1, waits.size());
+        assertWait(TOKEN, waits.get(0));
+    }
+
+    @Test
+    void neverSavesUpMoreThanTheBurst() throws InterruptedException {
+        RateLimiter limiter = limiter(600, 5);
+        now += TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < 6; i++) limiter.acquire();
+        assertEquals(1, waits.size());
+        assertWait(TOKEN, waits.get(0));
+    }
+
+    @Test
+    void drainThrowsAwaySavedTokens() throws InterruptedException {
+        RateLimiter limiter = limiter(600, 5);
+        limiter.drain();
+        limiter.acquire();
+        assertEquals(1, waits.size());
+        assertWait(TOKEN, waits.get(0));
+    }
+
+    @Test
+    void concurrentCallersReserveTheirTurns() throws Exception {
+        // the clock stands still, so every caller waits for its own later token instead of them all taking the next one
+        RateLimiter limiter = new RateLimiter(600, 1, () -> now, waits::add);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5; i++) limiter.acquire();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Long> sorted = new ArrayList<Long>(waits);
+        Collections.sort(sorted);
+        assertEquals(19, sorted.size());
+        for (int i = 0; i < sorted.size(); i++) assertWait((i+1)*TOKEN, sorted.get(i));
+    }
+
+    @Test
+    void realSleeperWaitsAtLeastTheRequestedTime() throws InterruptedException {
+        long start = System.nanoTime();
+        RateLimiter.THREAD_SLEEPER.sleep(TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    void rejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(100, 0));
+    }
+}
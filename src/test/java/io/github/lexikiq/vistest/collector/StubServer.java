@@ -0,0 +1,132 @@
+package io.github.lexikiq.vistest.collector;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP server for tests. Every path is answered by its own {@link Route} (or a 404), and the requests to each
+ * path are counted and kept.
+ */
+class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final Map<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+    private final List<HttpExchange> requests = new ArrayList<HttpExchange>();
+
+    /**
+     * Answers the requests to a path.
+     */
+    interface Route {
+        /**
+         * @param count how many times the path has been requested, including this time
+         */
+        void handle(HttpExchange exchange, int count) throws IOException;
+    }
+
+    StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the server's address followed by the path, i.e. {@code http://127.0.0.1:1234/page}
+     */
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void route(String path, Route route) {
+        routes.put(path, route);
+    }
+
+    int requests(String path) {
+        AtomicInteger count = counts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the request headers of the last request to a path, or null if there was none
+     */
+    Headers lastHeaders(String path) {
+        synchronized (requests) {
+            for (int i = requests.size()-1; i >= 0; i--) {
+                if (requests.get(i).getRequestURI().getPath().equals(path)) return requests.get(i).getRequestHeaders();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the query parameters of every request to a path, in the order they came in
+     */
+    List<Map<String, String>> queries(String path) {
+        List<Map<String, String>> queries = new ArrayList<Map<String, String>>();
+        synchronized (requests) {
+            for (HttpExchange request : requests) {
+                if (request.getRequestURI().getPath().equals(path)) queries.add(query(request));
+            }
+        }
+        return queries;
+    }
+
+    static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<String, String>();
+        String raw = exchange.getRequestURI().getQuery();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            int split = pair.indexOf('=');
+            if (split == -1) query.put(pair, "");
+            else query.put(pair.substring(0, split), pair.substring(split+1));
+        }
+        return query;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        synchronized (requests) {
+            requests.add(exchange);
+        }
+        int count = counts.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        Route route = routes.get(path);
+        try {
+            if (route == null) send(exchange, 404, "not found");
+            else route.handle(exchange, count);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, body == null ? null : body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a response, without a body if {@code body} is null.
+     */
+    static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}